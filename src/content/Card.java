@@ -1,12 +1,12 @@
 package content;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.function.ToIntFunction;
 
 import enums.CardShape;
 
@@ -20,17 +20,24 @@ public class Card
 	private CardShape shape;
 	private Symbol[] symbols;
 	private int size;
-	private int sizeSymbol;
+	private SymbolLayout layout;
+	private int index;
+	private long seed;
 	
 	private final double RATIO_FONT = 0.08;
 	private final int PADDING = 15;
+	private final double CIRCLE_TEXT_MARGIN = 0.1;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final long STRIP_PIXELS = 2048L * 2048;   // Largest canvas rendered at once
+	private static final int STRIP_ALIGNMENT = 16;           // Height of the JPEG blocks
 	
-	public Card(CardShape shape, Symbol[] symbols, int size)
+	public Card(CardShape shape, Symbol[] symbols, int size, long seed, int index)
 	{
 		this.shape = shape;
 		this.symbols = symbols;
 		this.size = size;
-		sizeSymbol = size / 5;
+		this.seed = seed;
+		this.index = index;
 	}
 	
 	public CardShape getShape()
@@ -38,100 +45,211 @@ public class Card
 		return shape;
 	}
 	
+	public int getSize()
+	{
+		return size;
+	}
+	
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	public int getIndex()
+	{
+		return index;
+	}
+	
+	public Symbol[] getSymbols()
+	{
+		return symbols;
+	}
+	
 	/**
-	 * Generate a card with the symbols text
-	 * @return the generated card with symbols texts
+	 * Get the placement of the symbols on the card, computed once from the seed of the card
+	 * @return the layout of the symbols
 	 */
-	public Image getNamesImage()
+	public synchronized SymbolLayout getLayout()
 	{
-		// Create a new RGB image
-		BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = img.createGraphics();
-		
-		// Render Quality
-	    g.setStroke(new BasicStroke(2));
-	    RenderingHints qualityHints = new RenderingHints(
-	    		  RenderingHints.KEY_ANTIALIASING,
-	    		  RenderingHints.VALUE_ANTIALIAS_ON );
-	    qualityHints.put(
-	    		  RenderingHints.KEY_RENDERING,
-	    		  RenderingHints.VALUE_RENDER_QUALITY );
-	    g.setRenderingHints( qualityHints );
-	    
-	    // White background
-	    g.setColor(Color.WHITE);
-		g.fillRect(0, 0, size, size);
+		if (layout == null)
+		{
+			double[] shapeRadii = new double[symbols.length];
+			for (int i = 0; i < symbols.length; i++)
+			{
+				shapeRadii[i] = symbols[i].getShapeRadius();
+			}
+			
+			// The names card draws from the start of the same stream, the layout uses a stream split from it
+			layout = SymbolLayout.compute(shapeRadii, shape, createRandom().split());
+		}
+		return layout;
+	}
+	
+	/**
+	 * Create the random generator of the card, derived from the seed of the deck and the index of the card.
+	 * A new generator is created for each rendering so that a card is always rendered identically, on any thread
+	 * @return the random generator of the card
+	 */
+	private SplittableRandom createRandom()
+	{
+		return new SplittableRandom(mix(seed + GOLDEN_GAMMA * (index + 1)));
+	}
+	
+	/**
+	 * Mix the bits of a value so that close values give unrelated seeds
+	 * @param z : Value to mix
+	 * @return the mixed value
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Number of rows rendered at once. A large card is rendered in strips of this height, so that the memory used
+	 * does not depend on the size of the card
+	 * @return the height of the strips, the size of the card when it is rendered at once
+	 */
+	public int getStripRows()
+	{
+		if ((long) size * size <= STRIP_PIXELS) return size;
+		return Math.max(STRIP_ALIGNMENT, (int)(STRIP_PIXELS / size) / STRIP_ALIGNMENT * STRIP_ALIGNMENT);
+	}
+	
+	/**
+	 * Generate a strip of a card with the symbols text.
+	 * The image is the canvas of the current thread, it is overwritten by the next card rendered on this thread
+	 * @param top : First row of the strip, see getStripRows
+	 * @return the generated strip with symbols texts, the rows below the card being left blank
+	 */
+	public BufferedImage getNamesImage(int top)
+	{
+		// Reuse the canvas of the current thread, cleared with a white background
+		int rows = getStripRows();
+		CardCanvas canvas = CardCanvas.get(size, rows);
+		Graphics2D g = canvas.getGraphics();
+		g.translate(0, -top);
 		
-		// Algorithm to place the name of the symbols randomly
+		// Write the names at their random positions, the text outside of the strip being clipped
 		g.setColor(Color.BLACK);
+		g.setFont(canvas.getFont(getFontSize()));
+		int[][] positions = getNamesPositions(g.getFontMetrics()::stringWidth);
+		for (int i = 0; i < symbols.length; i++)
+		{
+			g.drawString(symbols[i].getName(), positions[i][0], positions[i][1]);
+		}
+		
+		applyShape(canvas, top, Math.min(rows, size - top));
+		return canvas.getImage();
+	}
+	
+	/**
+	 * @return the size of the font of the names, in pixels
+	 */
+	public int getFontSize()
+	{
+		return (int)(size * RATIO_FONT);
+	}
+	
+	/**
+	 * Algorithm to place the name of the symbols randomly, one name per line
+	 * @param textWidth : Width in pixels of a name written with the font of the card
+	 * @return the position in pixels of the start of the baseline of each name, from the top left corner of the card
+	 */
+	public int[][] getNamesPositions(ToIntFunction<String> textWidth)
+	{
+		int[][] positions = new int[symbols.length][2];
 		if (symbols.length > 0)
 		{
-			int heightName = size / (symbols.length + 1);
-			int fontSize = (int)(size * RATIO_FONT);
-			g.setFont(new Font("Arial", Font.BOLD, fontSize));
+			SplittableRandom random = createRandom();
+			int top = shape == CardShape.CIRCLE ? (int)(size * CIRCLE_TEXT_MARGIN) : 0;
+			int heightName = (size - 2 * top) / (symbols.length + 1);
+			int fontSize = getFontSize();
 			for (int i = 0; i < symbols.length; i++)
 			{
-				String name = symbols[i].getName();
-				int widthText = g.getFontMetrics().stringWidth(name);
+				int widthText = textWidth.applyAsInt(symbols[i].getName());
+				int yPos = top + (heightName / 8) + (i + 1) * heightName;
 				
-				int xPos = PADDING + (int)(Math.random() * (size - widthText - 2 * PADDING));
-				int yPos = (heightName / 8) + (i + 1) * heightName;
-				g.drawString(name, xPos, yPos);
+				// On a round card, the text stays within the chord at its edge farthest from the center
+				int left = PADDING;
+				int right = size - PADDING;
+				if (shape == CardShape.CIRCLE)
+				{
+					double dy = Math.max(Math.abs(yPos - size / 2.0), Math.abs(yPos - fontSize - size / 2.0));
+					double halfChord = Math.sqrt(Math.max(0, size * size / 4.0 - dy * dy));
+					left = (int)(size / 2.0 - halfChord) + PADDING;
+					right = (int)(size / 2.0 + halfChord) - PADDING;
+				}
+				
+				positions[i][0] = left + (int)(random.nextDouble() * (right - left - widthText));
+				positions[i][1] = yPos;
 			}
 		}
-		
-		// Close the graphic context
-		g.dispose();
-		
-		return img;
+		return positions;
 	}
 	
 	/**
-	 * Generate a card with the symbols image
-	 * @return the generated card with symbols images
+	 * Generate a strip of a card with the symbols image.
+	 * The image is the canvas of the current thread, it is overwritten by the next card rendered on this thread
+	 * @param cache : Resized images of the symbols shared by the cards of the job
+	 * @param top : First row of the strip, see getStripRows
+	 * @return the generated strip with symbols images, the rows below the card being left blank
 	 */
-	public Image getImage()
+	public BufferedImage getImage(SymbolCache cache, int top)
 	{
-		// Create a new RGB image
-		BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = img.createGraphics();
-		
-		// Render Quality
-	    g.setStroke(new BasicStroke(2));
-	    RenderingHints qualityHints = new RenderingHints(
-	    		  RenderingHints.KEY_ANTIALIASING,
-	    		  RenderingHints.VALUE_ANTIALIAS_ON );
-	    qualityHints.put(
-	    		  RenderingHints.KEY_RENDERING,
-	    		  RenderingHints.VALUE_RENDER_QUALITY );
-	    g.setRenderingHints( qualityHints );
-		
-	    // White background
-		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, size, size);
+		// Reuse the canvas of the current thread, cleared with a white background
+		int rows = getStripRows();
+		CardCanvas canvas = CardCanvas.get(size, rows);
+		Graphics2D g = canvas.getGraphics();
 		
-		// Algorithm to place the image of the symbols in a circle with a random rotation
-		g.setColor(Color.BLACK);
-		if (symbols.length > 0)
+		// Place the images of the symbols following the layout of the card
+		SymbolLayout layout = getLayout();
+		for (int i = 0; i < symbols.length; i++)
 		{
-			BufferedImage s0 = symbols[0].getResizedImage(sizeSymbol);
-			g.drawImage(s0, size / 2 - s0.getWidth(null) / 2, size / 2 - s0.getHeight(null) / 2, null);
-			double dAngle = (2 * Math.PI) / (symbols.length - 1);
-			int initAngle = (int) (Math.random() * 360);
-			double radius = size / 3;
-			for (int i = 1; i < symbols.length; i++)
+			int side = (int) Math.round(layout.getSide(i) * size);
+			if (rows == size)
 			{
-				double angle = initAngle + dAngle * (i - 1) + Math.PI / 4;
-				BufferedImage si = symbols[i].getResizedImage(sizeSymbol);
-				int xSymbol = size / 2 + (int)(radius * Math.sin(angle) - si.getWidth(null) / 2);
-				int ySymbol = size / 2 + (int)(radius * Math.cos(angle) - si.getHeight(null) / 2);
-				g.drawImage(si, xSymbol, ySymbol, null);
+				// The rotated image is shared by all the cards, so it is only copied around its center
+				BufferedImage si = cache.getRotatedImage(symbols[i], side, layout.getRotation(i));
+				int x = (int) Math.round(layout.getX(i) * size - si.getWidth() / 2.0);
+				int y = (int) Math.round(layout.getY(i) * size - si.getHeight() / 2.0);
+				g.drawImage(si, x, y, null);
+			} else
+			{
+				// Large symbols are not kept rotated, they are transformed while drawn and only the part in the strip is computed
+				double radius = side / Math.sqrt(2);
+				double y = layout.getY(i) * size - top;
+				if (y + radius < 0 || y - radius > rows) continue;
+				
+				Image source = cache.getSourceImage(symbols[i], side);
+				int w = source.getWidth(null);
+				int h = source.getHeight(null);
+				double scale = (double) side / Math.max(w, h);
+				AffineTransform transform = AffineTransform.getTranslateInstance(layout.getX(i) * size, y);
+				transform.rotate(layout.getAngle(i));
+				transform.scale(scale, scale);
+				transform.translate(-w / 2.0, -h / 2.0);
+				g.drawImage(source, transform, null);
 			}
 		}
 		
-		// Close the graphic context
-		g.dispose();
-		
-		return img;
+		applyShape(canvas, top, Math.min(rows, size - top));
+		return canvas.getImage();
+	}
+	
+	/**
+	 * Cut the card to its shape, the mask of round cards being shared by all the cards of the same size
+	 * @param canvas : Canvas of the strip of the card
+	 * @param top : First row of the strip
+	 * @param rows : Number of rows of the card in the strip
+	 */
+	private void applyShape(CardCanvas canvas, int top, int rows)
+	{
+		if (shape == CardShape.CIRCLE)
+		{
+			CircleMask.get(size).apply(canvas.getImage(), top, rows);
+		}
 	}
 }
@@ -0,0 +1,112 @@
+package content;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Render target reused by all the cards rendered on the same thread.
+ * The image and its graphic context are allocated once per thread and size, then cleared between cards.
+ * The canvas holds the whole card, or one strip of the rows of a card too large to be rendered at once
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class CardCanvas
+{
+	private BufferedImage image;
+	private Graphics2D graphics;
+	private Font font;
+	private int width;
+	private int height;
+
+	private static final ThreadLocal<CardCanvas> canvases = ThreadLocal.withInitial(CardCanvas::new);
+	private static final BasicStroke STROKE = new BasicStroke(2);
+	private static final RenderingHints QUALITY_HINTS = createHints();
+
+	private CardCanvas() {}
+
+	/**
+	 * Get the canvas of the current thread, cleared with a white background.
+	 * The image of the canvas is overwritten by the next card rendered on the same thread
+	 * @param width : Width of the card in pixels
+	 * @param height : Number of rows rendered at once
+	 * @return the cleared canvas
+	 */
+	public static CardCanvas get(int width, int height)
+	{
+		CardCanvas canvas = canvases.get();
+		canvas.prepare(width, height);
+		return canvas;
+	}
+
+	public BufferedImage getImage()
+	{
+		return image;
+	}
+
+	public Graphics2D getGraphics()
+	{
+		return graphics;
+	}
+
+	/**
+	 * Get the bold Arial font of a given size, created once per canvas
+	 * @param fontSize : Size of the font
+	 * @return the font
+	 */
+	public Font getFont(int fontSize)
+	{
+		if (font == null || font.getSize() != fontSize)
+		{
+			font = new Font("Arial", Font.BOLD, fontSize);
+		}
+		return font;
+	}
+
+	/**
+	 * Allocate the image if the size changed and reset the graphic context
+	 * @param width : Width of the card in pixels
+	 * @param height : Number of rows rendered at once
+	 */
+	private void prepare(int width, int height)
+	{
+		if (image == null || this.width != width || this.height != height)
+		{
+			if (graphics != null) graphics.dispose();
+			this.width = width;
+			this.height = height;
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			graphics = image.createGraphics();
+			graphics.setStroke(STROKE);
+			graphics.setRenderingHints(QUALITY_HINTS);
+		}
+
+		// White background and default state for the next card
+		graphics.setTransform(new AffineTransform());
+		graphics.setClip(null);
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, width, height);
+	}
+
+	/**
+	 * Render quality shared by all the canvases
+	 * @return the rendering hints
+	 */
+	private static RenderingHints createHints()
+	{
+		RenderingHints qualityHints = new RenderingHints(
+				RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON );
+		qualityHints.put(
+				RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_QUALITY );
+		qualityHints.put(
+				RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+		return qualityHints;
+	}
+}
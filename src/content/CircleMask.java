@@ -0,0 +1,163 @@
+package content;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mask turning a square card into a round card.
+ * For each row of the card, the pixels outside the circle are stored as two runs and the pixels crossed by the edge
+ * with their antialiased coverage. A mask is computed once per card size in pixels, which already depends on the DPI,
+ * and applied to every card of that size
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class CircleMask
+{
+	private int size;
+	private int[] left;
+	private int[] right;
+	private int[] edgeStart;
+	private int[] edgeX;
+	private int[] edgeAlpha;
+
+	private static final ConcurrentHashMap<Integer, CircleMask> masks = new ConcurrentHashMap<>();
+	private static final int SUBSAMPLES = 8;
+	private static final int WHITE = 0xffffff;
+
+	/**
+	 * Get the mask of a card size, computed on the first request only
+	 * @param size : Size of the card in pixels
+	 * @return the mask
+	 */
+	public static CircleMask get(int size)
+	{
+		return masks.computeIfAbsent(size, CircleMask::new);
+	}
+
+	/**
+	 * Compute the runs and the edge of the circle inscribed in the card
+	 * @param size : Size of the card in pixels
+	 */
+	private CircleMask(int size)
+	{
+		this.size = size;
+		left = new int[size];
+		right = new int[size];
+		edgeStart = new int[size + 1];
+		int[] xs = new int[8 * size];
+		int[] alphas = new int[8 * size];
+		int nbEdges = 0;
+
+		double center = size / 2.0;
+		double radius = size / 2.0;
+		for (int y = 0; y < size; y++)
+		{
+			edgeStart[y] = nbEdges;
+			left[y] = size;
+			right[y] = size;
+			double dy = Math.abs(y + 0.5 - center);
+			for (int x = 0; x < size; x++)
+			{
+				double dx = Math.abs(x + 0.5 - center);
+				int alpha = coverage(x, y, dx, dy, center, radius);
+				if (alpha == 0) continue;
+
+				// First and last pixels touched by the circle on this row
+				if (left[y] == size) left[y] = x;
+				right[y] = x + 1;
+				if (alpha < 255)
+				{
+					if (nbEdges == xs.length)
+					{
+						xs = Arrays.copyOf(xs, 2 * nbEdges);
+						alphas = Arrays.copyOf(alphas, 2 * nbEdges);
+					}
+					xs[nbEdges] = x;
+					alphas[nbEdges] = alpha;
+					nbEdges++;
+				}
+			}
+		}
+		edgeStart[size] = nbEdges;
+		edgeX = Arrays.copyOf(xs, nbEdges);
+		edgeAlpha = Arrays.copyOf(alphas, nbEdges);
+	}
+
+	/**
+	 * Part of a pixel covered by the circle
+	 * @param x : Column of the pixel
+	 * @param y : Row of the pixel
+	 * @param dx : Horizontal distance between the center of the pixel and the center of the circle
+	 * @param dy : Vertical distance between the center of the pixel and the center of the circle
+	 * @param center : Center of the circle
+	 * @param radius : Radius of the circle
+	 * @return the coverage, from 0 to 255
+	 */
+	private static int coverage(int x, int y, double dx, double dy, double center, double radius)
+	{
+		// Pixels entirely on one side of the edge do not need to be sampled
+		double nearX = Math.max(0, dx - 0.5);
+		double nearY = Math.max(0, dy - 0.5);
+		if (nearX * nearX + nearY * nearY >= radius * radius) return 0;
+		double farX = dx + 0.5;
+		double farY = dy + 0.5;
+		if (farX * farX + farY * farY <= radius * radius) return 255;
+
+		int inside = 0;
+		for (int j = 0; j < SUBSAMPLES; j++)
+		{
+			double sy = y + (j + 0.5) / SUBSAMPLES - center;
+			for (int i = 0; i < SUBSAMPLES; i++)
+			{
+				double sx = x + (i + 0.5) / SUBSAMPLES - center;
+				if (sx * sx + sy * sy < radius * radius) inside++;
+			}
+		}
+		return inside * 255 / (SUBSAMPLES * SUBSAMPLES);
+	}
+
+	/**
+	 * Get the coverage of the pixels of a row, to be used as the transparency of the card in a document
+	 * @param y : Row of the card
+	 * @param alpha : Destination of the coverage, from 0 to 255
+	 * @param offset : Position of the row in the destination
+	 */
+	public void writeAlphaRow(int y, byte[] alpha, int offset)
+	{
+		Arrays.fill(alpha, offset, offset + size, (byte) 0);
+		Arrays.fill(alpha, offset + left[y], offset + right[y], (byte) 255);
+		for (int k = edgeStart[y]; k < edgeStart[y + 1]; k++)
+		{
+			alpha[offset + edgeX[k]] = (byte) edgeAlpha[k];
+		}
+	}
+
+	/**
+	 * Paint the outside of the circle in white, blending the edge with its coverage
+	 * @param image : Rows of the card to mask, in TYPE_INT_RGB and of the width of the mask
+	 * @param top : Row of the card at the top of the image
+	 * @param rows : Number of rows to mask
+	 */
+	public void apply(BufferedImage image, int top, int rows)
+	{
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int y = top; y < top + rows; y++)
+		{
+			int row = (y - top) * size;
+			Arrays.fill(pixels, row, row + left[y], WHITE);
+			Arrays.fill(pixels, row + right[y], row + size, WHITE);
+			for (int k = edgeStart[y]; k < edgeStart[y + 1]; k++)
+			{
+				int i = row + edgeX[k];
+				int a = edgeAlpha[k];
+				int p = pixels[i];
+				int r = (((p >> 16) & 0xff) * a + 255 * (255 - a) + 127) / 255;
+				int g = (((p >> 8) & 0xff) * a + 255 * (255 - a) + 127) / 255;
+				int b = ((p & 0xff) * a + 255 * (255 - a) + 127) / 255;
+				pixels[i] = (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package content;
+
+import java.util.ArrayList;
+
+import enums.CardShape;
+
+/**
+ * Immutable incidence structure of a deck, stored as flat rows of symbol indices (card x slot -> symbol)
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class Deck
+{
+	private final int nbCards;
+	private final int symbolsPerCard;
+	private final int nbSymbols;
+	private final int[] incidence;
+
+	Deck(int nbCards, int symbolsPerCard, int nbSymbols, int[] incidence)
+	{
+		this.nbCards = nbCards;
+		this.symbolsPerCard = symbolsPerCard;
+		this.nbSymbols = nbSymbols;
+		this.incidence = incidence;
+	}
+
+	public int getNbCards()
+	{
+		return nbCards;
+	}
+
+	public int getSymbolsPerCard()
+	{
+		return symbolsPerCard;
+	}
+
+	public int getNbSymbols()
+	{
+		return nbSymbols;
+	}
+
+	/**
+	 * Index of the symbol at a given slot of a card
+	 * @param card : Index of the card
+	 * @param slot : Slot of the symbol on the card
+	 * @return the index of the symbol
+	 */
+	public int getSymbol(int card, int slot)
+	{
+		return incidence[card * symbolsPerCard + slot];
+	}
+
+	/**
+	 * Copy of the symbol indices of a card
+	 * @param card : Index of the card
+	 * @return the symbol indices of the card
+	 */
+	public int[] getCard(int card)
+	{
+		int[] row = new int[symbolsPerCard];
+		System.arraycopy(incidence, card * symbolsPerCard, row, 0, symbolsPerCard);
+		return row;
+	}
+
+	/**
+	 * Bind the given symbols on the indices of the deck and create the corresponding cards
+	 * @param symbols : Symbols to bind, at least as many as the symbols of the deck
+	 * @param shape : Shape of the cards
+	 * @param size : Size of the cards in pixels
+	 * @param seed : Seed of the deck, from which the layout of each card is derived
+	 * @return the cards of the deck
+	 */
+	public ArrayList<Card> createCards(ArrayList<Symbol> symbols, CardShape shape, int size, long seed)
+	{
+		ArrayList<Card> cards = new ArrayList<>(nbCards);
+		for (int i = 0; i < nbCards; i++)
+		{
+			Symbol[] cardSymbols = new Symbol[symbolsPerCard];
+			for (int j = 0; j < symbolsPerCard; j++)
+			{
+				cardSymbols[j] = symbols.get(incidence[i * symbolsPerCard + j]);
+			}
+			cards.add(new Card(shape, cardSymbols, size, seed, i));
+		}
+		return cards;
+	}
+}
@@ -0,0 +1,103 @@
+package content;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import elements.LoadingBar;
+
+/**
+ * Keep the verified decks of each number of symbols per card and of cards for the whole process,
+ * so that a new generation only binds the selected symbols on the cached indices.
+ * A deck found by a DeckSearch with fewer cards than wanted is kept only until a later search finds more
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class DeckCache
+{
+	private ConcurrentHashMap<Long, Deck> decks;
+	private ConcurrentHashMap<Long, ValidationReport> reports;
+
+	private static DeckCache instance;
+	
+	private final long SEARCH_BUDGET = 2000;  // ms
+
+	private DeckCache()
+	{
+		decks = new ConcurrentHashMap<>();
+		reports = new ConcurrentHashMap<>();
+	}
+
+	public static DeckCache getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new DeckCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbCards : Number of cards wanted
+	 * @return the key of the deck in the cache
+	 */
+	private static Long getKey(int symbolsPerCard, int nbCards)
+	{
+		return ((long) symbolsPerCard << 32) | nbCards;
+	}
+
+	/**
+	 * Get the deck already built for a number of symbols per card and of cards, without building it
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbCards : Number of cards wanted
+	 * @return the best deck built so far, or null if none was built
+	 */
+	public Deck getDeck(int symbolsPerCard, int nbCards)
+	{
+		return decks.get(getKey(symbolsPerCard, nbCards));
+	}
+
+	/**
+	 * Build and verify the deck of a number of symbols per card and of cards, outside of the event dispatch thread.
+	 * A projective plane is truncated at once, otherwise a DeckSearch runs for SEARCH_BUDGET with the LoadingBar
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbCards : Number of cards wanted, at most the full deck
+	 * @return the cached deck if it has all the cards, otherwise the best of the cached deck and of a new search
+	 */
+	public synchronized Deck buildDeck(int symbolsPerCard, int nbCards)
+	{
+		Long key = getKey(symbolsPerCard, nbCards);
+		Deck best = decks.get(key);
+		if (best != null && best.getNbCards() >= nbCards) return best;
+
+		boolean searching = !DeckGenerator.isSupported(symbolsPerCard);
+		if (searching) LoadingBar.getInstance().init("Recherche du jeu", DeckSearch.PROGRESS_STEPS);
+		int nbSymbols = symbolsPerCard * symbolsPerCard - symbolsPerCard + 1;
+		Deck deck = new DeckSearch(symbolsPerCard, nbSymbols, nbCards, SEARCH_BUDGET).run();
+		if (searching) LoadingBar.getInstance().cancel();
+
+		if (best != null && best.getNbCards() >= deck.getNbCards()) return best;
+		reports.put(key, DeckValidator.validate(deck));
+		decks.put(key, deck);
+		return deck;
+	}
+
+	/**
+	 * Get the verification report of a cached deck
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbCards : Number of cards wanted
+	 * @return the report of the verification done when the deck was built, or null if none was built
+	 */
+	public ValidationReport getReport(int symbolsPerCard, int nbCards)
+	{
+		return reports.get(getKey(symbolsPerCard, nbCards));
+	}
+
+	/**
+	 * Remove all the cached decks
+	 */
+	public synchronized void clear()
+	{
+		decks.clear();
+		reports.clear();
+	}
+}
@@ -0,0 +1,76 @@
+package content;
+
+/**
+ * Build the incidence structure of a deck without any dependency on the user interface.
+ * The deck is the projective plane over the finite field GF(q), with q = symbols per card - 1
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class DeckGenerator
+{
+	private DeckGenerator() {}
+
+	/**
+	 * Check if a deck can be generated for a number of symbols per card
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @return true if the number of symbols minus one is a prime power
+	 */
+	public static boolean isSupported(int symbolsPerCard)
+	{
+		return symbolsPerCard == 2 || FiniteField.isPrimePower(symbolsPerCard - 1);
+	}
+
+	/**
+	 * Generate the deck for a number of symbols per card
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @return the generated deck
+	 */
+	public static Deck generate(int symbolsPerCard)
+	{
+		if (!isSupported(symbolsPerCard))
+		{
+			throw new IllegalArgumentException("No projective plane for " + symbolsPerCard + " symbols per card");
+		}
+
+		// Settings
+		int q = symbolsPerCard - 1;
+		int nbCards = q * q + q + 1;
+		int[] incidence = new int[nbCards * symbolsPerCard];
+		int offset = 0;
+		FiniteField field = new FiniteField(q);
+
+		// The symbols 0 to q^2 - 1 are the points (x, y) of the affine plane, the q + 1 last ones are at infinity
+		int infinity = q * q;
+
+		// Lines y = m * x + b, completed by the symbol at infinity of the slope m
+		for (int m = 0; m < q; m++)
+		{
+			for (int b = 0; b < q; b++)
+			{
+				for (int x = 0; x < q; x++)
+				{
+					incidence[offset++] = x * q + field.add(field.mul(m, x), b);
+				}
+				incidence[offset++] = infinity + m;
+			}
+		}
+
+		// Vertical lines x = c, completed by the vertical symbol at infinity
+		for (int c = 0; c < q; c++)
+		{
+			for (int y = 0; y < q; y++)
+			{
+				incidence[offset++] = c * q + y;
+			}
+			incidence[offset++] = infinity + q;
+		}
+
+		// Line at infinity
+		for (int i = 0; i < symbolsPerCard; i++)
+		{
+			incidence[offset++] = infinity + i;
+		}
+
+		return new Deck(nbCards, symbolsPerCard, nbCards, incidence);
+	}
+}
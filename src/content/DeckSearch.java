@@ -0,0 +1,303 @@
+package content;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import elements.LoadingBar;
+
+/**
+ * Search a deck when no projective plane fits the requested settings.
+ * Randomized greedy restarts run in parallel on all the cores until the time budget is spent or the LoadingBar is cancelled,
+ * and the best valid deck found so far is kept with its symbols numbered from 0, so that it needs only the symbols it uses
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class DeckSearch
+{
+	private int symbolsPerCard;
+	private int nbSymbols;
+	private int targetCards;
+	private long budget;
+	private int[] bestIncidence;
+	private int bestCards;
+	private long duration;
+	private LongAdder evaluations;
+	private volatile boolean finished;
+
+	private final int MAX_FAILED_ATTEMPTS = 200;
+
+	public static final int PROGRESS_STEPS = 20;
+
+	/**
+	 * Prepare a search
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbSymbols : Number of symbols available
+	 * @param targetCards : Number of cards wanted, the search stops as soon as it is reached
+	 * @param budget : Wall-clock budget of the search in milliseconds
+	 */
+	public DeckSearch(int symbolsPerCard, int nbSymbols, int targetCards, long budget)
+	{
+		if (symbolsPerCard < 2 || nbSymbols < symbolsPerCard)
+		{
+			throw new IllegalArgumentException("Not enough symbols for " + symbolsPerCard + " symbols per card");
+		}
+
+		this.symbolsPerCard = symbolsPerCard;
+		this.nbSymbols = nbSymbols;
+		this.targetCards = targetCards;
+		this.budget = budget;
+		evaluations = new LongAdder();
+	}
+
+	/**
+	 * @return the number of candidate cards evaluated during the last run
+	 */
+	public long getEvaluations()
+	{
+		return evaluations.sum();
+	}
+
+	/**
+	 * @return the duration of the last run in milliseconds
+	 */
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	/**
+	 * @return the number of candidate cards evaluated per second during the last run
+	 */
+	public double getThroughput()
+	{
+		return duration == 0 ? 0 : evaluations.sum() * 1000.0 / duration;
+	}
+
+	/**
+	 * Run the search
+	 * @return the best valid deck found in the time budget
+	 */
+	public Deck run()
+	{
+		long start = System.currentTimeMillis();
+		evaluations.reset();
+		bestIncidence = new int[0];
+		bestCards = 0;
+		finished = false;
+
+		// A truncated projective plane is always valid, no search is needed when one fits
+		int planeCards = symbolsPerCard * symbolsPerCard - symbolsPerCard + 1;
+		if (DeckGenerator.isSupported(symbolsPerCard) && nbSymbols >= planeCards)
+		{
+			Deck plane = DeckGenerator.generate(symbolsPerCard);
+			bestCards = Math.min(targetCards, planeCards);
+			bestIncidence = new int[bestCards * symbolsPerCard];
+			for (int i = 0; i < bestCards; i++)
+			{
+				System.arraycopy(plane.getCard(i), 0, bestIncidence, i * symbolsPerCard, symbolsPerCard);
+			}
+		} else
+		{
+			// One restart loop per core, each one with its own random stream
+			int workers = Runtime.getRuntime().availableProcessors();
+			ExecutorService executor = Executors.newFixedThreadPool(workers);
+			SplittableRandom random = new SplittableRandom();
+			long deadline = start + budget;
+			for (int i = 0; i < workers; i++)
+			{
+				SplittableRandom workerRandom = random.split();
+				executor.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						while (!finished && System.currentTimeMillis() < deadline)
+						{
+							restart(workerRandom, deadline);
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			try
+			{
+				// Progress of the budget on the LoadingBar, a cancellation keeps the best deck found so far
+				long step = Math.max(1, budget / PROGRESS_STEPS);
+				while (!executor.awaitTermination(step, TimeUnit.MILLISECONDS))
+				{
+					LoadingBar.getInstance().increment();
+					if (LoadingBar.getInstance().isAborted()) finished = true;
+				}
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finished = true;
+			executor.shutdownNow();
+		}
+
+		duration = System.currentTimeMillis() - start;
+		synchronized (this)
+		{
+			return compact(bestCards, bestIncidence);
+		}
+	}
+
+	/**
+	 * Number the symbols of a deck in their order of appearance, dropping the ones that are on no card
+	 * @param nbCards : Number of cards
+	 * @param incidence : Symbol indices of the cards
+	 * @return the deck with its symbols numbered from 0
+	 */
+	private Deck compact(int nbCards, int[] incidence)
+	{
+		int[] index = new int[nbSymbols];
+		Arrays.fill(index, -1);
+		int[] compacted = new int[incidence.length];
+		int used = 0;
+		for (int i = 0; i < incidence.length; i++)
+		{
+			if (index[incidence[i]] < 0) index[incidence[i]] = used++;
+			compacted[i] = index[incidence[i]];
+		}
+		return new Deck(nbCards, symbolsPerCard, used, compacted);
+	}
+
+	/**
+	 * Build a deck card by card until no compatible card is found anymore
+	 * @param random : Random generator of the worker
+	 * @param deadline : Time at which the search ends
+	 */
+	private void restart(SplittableRandom random, long deadline)
+	{
+		// For each symbol, bitset of the cards containing it
+		int cardWords = (targetCards + 63) / 64;
+		long[] cardsWithSymbol = new long[nbSymbols * cardWords];
+		int[] incidence = new int[targetCards * symbolsPerCard];
+		int[] order = new int[nbSymbols];
+		int[] candidate = new int[symbolsPerCard];
+		long[] covered = new long[cardWords];
+		int nbCards = 0;
+		int failedAttempts = 0;
+
+		for (int i = 0; i < nbSymbols; i++) order[i] = i;
+
+		while (nbCards < targetCards && failedAttempts < MAX_FAILED_ATTEMPTS && !finished)
+		{
+			if ((failedAttempts & 15) == 0 && System.currentTimeMillis() >= deadline) break;
+			evaluations.increment();
+
+			// Random order of the symbols for this candidate
+			for (int i = nbSymbols - 1; i > 0; i--)
+			{
+				int j = random.nextInt(i + 1);
+				int tmp = order[i];
+				order[i] = order[j];
+				order[j] = tmp;
+			}
+
+			// Greedily take used symbols whose cards are not covered yet, so each existing card gets exactly one common symbol
+			Arrays.fill(covered, 0);
+			int size = 0;
+			for (int i = 0; i < nbSymbols && size < symbolsPerCard; i++)
+			{
+				int base = order[i] * cardWords;
+				boolean disjoint = true;
+				boolean used = false;
+				for (int w = 0; w < cardWords; w++)
+				{
+					long cards = cardsWithSymbol[base + w];
+					if ((covered[w] & cards) != 0) disjoint = false;
+					if (cards != 0) used = true;
+				}
+				if (used && disjoint)
+				{
+					for (int w = 0; w < cardWords; w++)
+					{
+						covered[w] |= cardsWithSymbol[base + w];
+					}
+					candidate[size++] = order[i];
+				}
+			}
+
+			// Complete the candidate with symbols that are not used yet
+			boolean valid = isCovered(covered, nbCards);
+			for (int i = 0; i < nbSymbols && size < symbolsPerCard && valid; i++)
+			{
+				if (isUnused(cardsWithSymbol, order[i] * cardWords, cardWords))
+				{
+					candidate[size++] = order[i];
+				}
+			}
+
+			// The candidate is kept only if it meets every existing card
+			if (valid && size == symbolsPerCard)
+			{
+				for (int i = 0; i < symbolsPerCard; i++)
+				{
+					incidence[nbCards * symbolsPerCard + i] = candidate[i];
+					cardsWithSymbol[candidate[i] * cardWords + (nbCards >>> 6)] |= 1L << nbCards;
+				}
+				nbCards++;
+				failedAttempts = 0;
+			} else
+			{
+				failedAttempts++;
+			}
+		}
+
+		keepBest(incidence, nbCards);
+	}
+
+	/**
+	 * Check that all the existing cards are covered by the candidate
+	 * @param covered : Bitset of the cards covered
+	 * @param nbCards : Number of existing cards
+	 * @return true if every existing card is covered
+	 */
+	private boolean isCovered(long[] covered, int nbCards)
+	{
+		for (int w = 0; w < covered.length; w++)
+		{
+			int remaining = nbCards - w * 64;
+			long expected = remaining >= 64 ? -1L : remaining <= 0 ? 0L : (1L << remaining) - 1;
+			if (covered[w] != expected) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check that a symbol is not on any card yet
+	 * @param cardsWithSymbol : Bitsets of the cards containing each symbol
+	 * @param base : Offset of the bitset of the symbol
+	 * @param cardWords : Number of words of each bitset
+	 * @return true if the symbol is on no card
+	 */
+	private boolean isUnused(long[] cardsWithSymbol, int base, int cardWords)
+	{
+		for (int w = 0; w < cardWords; w++)
+		{
+			if (cardsWithSymbol[base + w] != 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Keep the deck of a restart if it is the best one found so far
+	 * @param incidence : Symbol indices of the cards
+	 * @param nbCards : Number of cards
+	 */
+	private synchronized void keepBest(int[] incidence, int nbCards)
+	{
+		if (nbCards > bestCards)
+		{
+			bestCards = nbCards;
+			bestIncidence = Arrays.copyOf(incidence, nbCards * symbolsPerCard);
+			if (bestCards >= targetCards) finished = true;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package content;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verify that every pair of cards of a deck shares exactly one symbol, and that no card holds the same symbol twice.
+ * Each card is stored as a bitset of symbols and the pairs are checked in parallel
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class DeckValidator
+{
+	private static final int ROWS_PER_TASK = 16;
+
+	private DeckValidator() {}
+
+	/**
+	 * Verify a deck produced by the DeckGenerator
+	 * @param deck : Deck to verify
+	 * @return the report of the verification
+	 */
+	public static ValidationReport validate(Deck deck)
+	{
+		int[][] cards = new int[deck.getNbCards()][];
+		for (int i = 0; i < cards.length; i++)
+		{
+			cards[i] = deck.getCard(i);
+		}
+		return validate(cards);
+	}
+
+	/**
+	 * Verify a custom deck
+	 * @param cards : Symbol indices of each card
+	 * @return the report of the verification
+	 */
+	public static ValidationReport validate(int[][] cards)
+	{
+		long start = System.nanoTime();
+		int nbCards = cards.length;
+
+		// Bitset of each card, one row of words per card
+		int nbSymbols = 0;
+		for (int[] card : cards)
+		{
+			for (int symbol : card)
+			{
+				nbSymbols = Math.max(nbSymbols, symbol + 1);
+			}
+		}
+		int words = Math.max(1, (nbSymbols + 63) / 64);
+		long[] bits = new long[nbCards * words];
+		ArrayList<Integer> repeatedCards = new ArrayList<>();
+		for (int i = 0; i < nbCards; i++)
+		{
+			for (int symbol : cards[i])
+			{
+				// A repeated symbol would collapse in the bitset and hide the duplicate
+				long bit = 1L << symbol;
+				if ((bits[i * words + (symbol >>> 6)] & bit) != 0 && !repeatedCards.contains(i)) repeatedCards.add(i);
+				bits[i * words + (symbol >>> 6)] |= bit;
+			}
+		}
+
+		// Search the first offending pair over all the cores
+		AtomicLong firstPair = new AtomicLong(Long.MAX_VALUE);
+		ForkJoinPool.commonPool().invoke(new PairsTask(bits, words, nbCards, 0, nbCards, firstPair));
+		long duration = System.nanoTime() - start;
+
+		long pair = firstPair.get();
+		if (pair == Long.MAX_VALUE)
+		{
+			return new ValidationReport(-1, -1, 1, repeatedCards, nbCards, duration);
+		}
+		int first = (int)(pair / nbCards);
+		int second = (int)(pair % nbCards);
+		return new ValidationReport(first, second, countCommon(bits, words, first, second), repeatedCards, nbCards, duration);
+	}
+
+	/**
+	 * Count the symbols shared by two cards
+	 * @param bits : Bitsets of the cards
+	 * @param words : Number of words of each bitset
+	 * @param first : Index of the first card
+	 * @param second : Index of the second card
+	 * @return the number of common symbols
+	 */
+	private static int countCommon(long[] bits, int words, int first, int second)
+	{
+		int common = 0;
+		int a = first * words;
+		int b = second * words;
+		for (int w = 0; w < words; w++)
+		{
+			common += Long.bitCount(bits[a + w] & bits[b + w]);
+		}
+		return common;
+	}
+
+	/**
+	 * Check the pairs (i, j) with j > i for a range of first cards i
+	 */
+	private static class PairsTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long[] bits;
+		private final int words;
+		private final int nbCards;
+		private final int from;
+		private final int to;
+		private final AtomicLong firstPair;
+
+		PairsTask(long[] bits, int words, int nbCards, int from, int to, AtomicLong firstPair)
+		{
+			this.bits = bits;
+			this.words = words;
+			this.nbCards = nbCards;
+			this.from = from;
+			this.to = to;
+			this.firstPair = firstPair;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > ROWS_PER_TASK)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new PairsTask(bits, words, nbCards, from, middle, firstPair),
+						new PairsTask(bits, words, nbCards, middle, to, firstPair));
+				return;
+			}
+
+			for (int i = from; i < to; i++)
+			{
+				// Stop as soon as an earlier pair has been found by another task
+				if ((long) i * nbCards >= firstPair.get()) return;
+				for (int j = i + 1; j < nbCards; j++)
+				{
+					if (countCommon(bits, words, i, j) != 1)
+					{
+						long pair = (long) i * nbCards + j;
+						firstPair.accumulateAndGet(pair, Math::min);
+						return;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package content;
+
+/**
+ * Finite field GF(p^k) with precomputed addition and multiplication tables.
+ * Elements are the integers 0 to order - 1, read as polynomials over GF(p) with one base p digit per coefficient
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class FiniteField
+{
+	private final int order;
+	private final int prime;
+	private final int degree;
+	private final int[] addTable;
+	private final int[] mulTable;
+
+	/**
+	 * Create the field of the given order.
+	 * The order 1 is accepted as the degenerate case of the deck with 2 symbols per card
+	 * @param order : Number of elements, must be a prime power
+	 */
+	public FiniteField(int order)
+	{
+		if (order != 1 && !isPrimePower(order))
+		{
+			throw new IllegalArgumentException("The order " + order + " is not a prime power");
+		}
+
+		this.order = order;
+		prime = order == 1 ? 1 : smallestFactor(order);
+		int k = 0;
+		for (int q = order; q > 1; q /= prime) k++;
+		degree = k;
+
+		addTable = new int[order * order];
+		mulTable = new int[order * order];
+		if (order > 1)
+		{
+			// Addition is done coefficient by coefficient
+			for (int a = 0; a < order; a++)
+			{
+				for (int b = 0; b < order; b++)
+				{
+					addTable[a * order + b] = addPolynomials(a, b);
+				}
+			}
+
+			// Multiplication is done modulo the first irreducible polynomial found
+			for (int modulus = order; modulus < order * prime; modulus++)
+			{
+				if (fillMultiplication(modulus)) break;
+			}
+		}
+	}
+
+	public int getOrder()
+	{
+		return order;
+	}
+
+	public int getPrime()
+	{
+		return prime;
+	}
+
+	public int getDegree()
+	{
+		return degree;
+	}
+
+	/**
+	 * Sum of two elements
+	 * @param a : First element
+	 * @param b : Second element
+	 * @return a + b
+	 */
+	public int add(int a, int b)
+	{
+		return addTable[a * order + b];
+	}
+
+	/**
+	 * Product of two elements
+	 * @param a : First element
+	 * @param b : Second element
+	 * @return a * b
+	 */
+	public int mul(int a, int b)
+	{
+		return mulTable[a * order + b];
+	}
+
+	/**
+	 * Check if a number is a power of a prime number
+	 * @param n : Number to check
+	 * @return true if n = p^k with p prime and k > 0
+	 */
+	public static boolean isPrimePower(int n)
+	{
+		if (n < 2) return false;
+		int p = smallestFactor(n);
+		while (n % p == 0) n /= p;
+		return n == 1;
+	}
+
+	/**
+	 * Smallest factor greater than 1 of a number, which is always prime
+	 * @param n : Number greater than 1
+	 * @return the smallest prime factor of n
+	 */
+	private static int smallestFactor(int n)
+	{
+		for (int p = 2; p * p <= n; p++)
+		{
+			if (n % p == 0) return p;
+		}
+		return n;
+	}
+
+	/**
+	 * Add two polynomials coefficient by coefficient modulo p
+	 * @param a : First polynomial
+	 * @param b : Second polynomial
+	 * @return the sum of the polynomials
+	 */
+	private int addPolynomials(int a, int b)
+	{
+		int result = 0;
+		for (int weight = 1; weight < order; weight *= prime)
+		{
+			int digit = ((a / weight) % prime + (b / weight) % prime) % prime;
+			result += digit * weight;
+		}
+		return result;
+	}
+
+	/**
+	 * Fill the multiplication table modulo a monic polynomial of the field degree
+	 * @param modulus : Monic polynomial of degree k, encoded like the elements
+	 * @return true if the polynomial is irreducible, i.e. the table has no zero divisors
+	 */
+	private boolean fillMultiplication(int modulus)
+	{
+		int[] mod = digits(modulus, degree + 1);
+		for (int a = 1; a < order; a++)
+		{
+			int[] da = digits(a, degree);
+			for (int b = a; b < order; b++)
+			{
+				int[] db = digits(b, degree);
+
+				// Schoolbook product of the coefficients
+				int[] product = new int[2 * degree - 1];
+				for (int i = 0; i < degree; i++)
+				{
+					if (da[i] == 0) continue;
+					for (int j = 0; j < degree; j++)
+					{
+						product[i + j] = (product[i + j] + da[i] * db[j]) % prime;
+					}
+				}
+
+				// Reduction by the monic modulus, from the highest degree
+				for (int i = product.length - 1; i >= degree; i--)
+				{
+					int factor = product[i];
+					if (factor == 0) continue;
+					for (int j = 0; j <= degree; j++)
+					{
+						int index = i - degree + j;
+						product[index] = ((product[index] - factor * mod[j]) % prime + prime) % prime;
+					}
+				}
+
+				int result = 0;
+				for (int i = degree - 1; i >= 0; i--)
+				{
+					result = result * prime + product[i];
+				}
+
+				// A zero product of non zero elements means the modulus is reducible
+				if (result == 0) return false;
+				mulTable[a * order + b] = result;
+				mulTable[b * order + a] = result;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decompose a number in base p
+	 * @param value : Number to decompose
+	 * @param length : Number of digits
+	 * @return the digits, lowest weight first
+	 */
+	private int[] digits(int value, int length)
+	{
+		int[] result = new int[length];
+		for (int i = 0; i < length; i++)
+		{
+			result[i] = value % prime;
+			value /= prime;
+		}
+		return result;
+	}
+}
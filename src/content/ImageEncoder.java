@@ -0,0 +1,320 @@
+package content;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.ImgRaw;
+
+/**
+ * Encoding of the images of a document.
+ * The cards and the symbols are stored as JPEG with the quality of the settings, or losslessly with Flate when the quality is at its maximum.
+ * The names cards only contain black text on white, they are stored in grayscale, or in black and white from HIGH_DPI where the
+ * antialiasing of the text is not visible anymore.
+ * The lossless images are read directly from their pixels and deflated on all the cores, iText only writes the compressed streams.
+ * The cards are encoded strip by strip as they are rendered, the lossless ones in a single image and the JPEG ones in one image per strip
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ImageEncoder
+{
+	public static final int LOSSLESS = 100;
+	public static final int HIGH_DPI = 600;
+
+	private ImageEncoder() {}
+
+	/**
+	 * Renderer of the strips of a card, see Card.getStripRows
+	 */
+	public interface StripRenderer
+	{
+		/**
+		 * @param top : First row of the strip
+		 * @return the strip in TYPE_INT_RGB, of the width of the card
+		 */
+		BufferedImage render(int top);
+	}
+
+	/**
+	 * Conversion of a row of pixels to the bytes of an image of the document
+	 */
+	private interface RowConverter
+	{
+		/**
+		 * @param pixels : Pixels of the source image
+		 * @param start : Index of the first pixel of the row
+		 * @param w : Width of the row
+		 * @param buffer : Destination of the bytes
+		 * @param offset : Position of the row in the destination
+		 */
+		void convert(int[] pixels, int start, int w, byte[] buffer, int offset);
+	}
+
+	/**
+	 * Encode a card of symbols, rendered strip by strip
+	 * @param size : Size of the card in pixels
+	 * @param stripRows : Number of rows of each strip
+	 * @param strips : Renderer of the strips
+	 * @return the image of the card for the document, or with JPEG one image per strip from the top of the card
+	 */
+	public static Image[] encodeCard(int size, int stripRows, StripRenderer strips) throws BadElementException, IOException
+	{
+		if (Settings.jpegQuality < LOSSLESS)
+		{
+			Image[] images = new Image[(size + stripRows - 1) / stripRows];
+			for (int k = 0; k < images.length; k++)
+			{
+				BufferedImage strip = strips.render(k * stripRows);
+				int rows = Math.min(stripRows, size - k * stripRows);
+				images[k] = Image.getInstance(toJpeg(rows < strip.getHeight() ? strip.getSubimage(0, 0, size, rows) : strip, Settings.jpegQuality));
+			}
+			return images;
+		}
+		return new Image[] {deflated(size, 3, 8, stripRows, strips, ImageEncoder::toRgb)};
+	}
+
+	/**
+	 * Encode a names card rendered strip by strip, in grayscale or in black and white depending on the DPI
+	 * @param size : Size of the card in pixels
+	 * @param stripRows : Number of rows of each strip
+	 * @param strips : Renderer of the strips, black text on white
+	 * @return the image of the card for the document
+	 */
+	public static Image encodeNames(int size, int stripRows, StripRenderer strips) throws BadElementException
+	{
+		if (Settings.DPI >= HIGH_DPI)
+		{
+			return deflated(size, 1, 1, stripRows, strips, ImageEncoder::toBits);
+		}
+		return deflated(size, 1, 8, stripRows, strips, ImageEncoder::toGray);
+	}
+
+	/**
+	 * Encode the image of a symbol. With JPEG, the transparency is kept aside as a lossless mask
+	 * @param symbol : Image of the symbol in TYPE_INT_ARGB
+	 * @return the image of the symbol for the document
+	 */
+	public static Image encodeSymbol(BufferedImage symbol) throws DocumentException, IOException
+	{
+		int w = symbol.getWidth();
+		int h = symbol.getHeight();
+		int[] argb = symbol.getType() == BufferedImage.TYPE_INT_ARGB && symbol.getRaster().getDataBuffer().getSize() == w * h
+				? ((DataBufferInt) symbol.getRaster().getDataBuffer()).getData() : symbol.getRGB(0, 0, w, h, null, 0, w);
+		boolean opaque = true;
+		for (int i = 0; i < argb.length && opaque; i++)
+		{
+			if (argb[i] >>> 24 != 255) opaque = false;
+		}
+
+		if (Settings.jpegQuality >= LOSSLESS)
+		{
+			Image image = deflated(w, h, 3, 8, (y, buffer, offset) -> toRgb(argb, y * w, w, buffer, offset));
+			if (!opaque) image.setImageMask(alphaMask(argb, w, h));
+			return image;
+		}
+
+		// Colors on a white background for the JPEG, alpha channel for the mask
+		BufferedImage rgb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		int[] colors = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < argb.length; i++)
+		{
+			int a = argb[i] >>> 24;
+			int r = (((argb[i] >> 16) & 0xff) * a + 255 * (255 - a)) / 255;
+			int g = (((argb[i] >> 8) & 0xff) * a + 255 * (255 - a)) / 255;
+			int b = ((argb[i] & 0xff) * a + 255 * (255 - a)) / 255;
+			colors[i] = (r << 16) | (g << 8) | b;
+		}
+
+		Image image = Image.getInstance(toJpeg(rgb, Settings.jpegQuality));
+		if (!opaque) image.setImageMask(alphaMask(argb, w, h));
+		return image;
+	}
+
+	/**
+	 * Embed a picture file as it is stored, without decoding it. The bytes of a JPEG file become the DCT stream of the image,
+	 * the compressed rows of a PNG file are kept as its Flate stream, iText only separating the transparency if any
+	 * @param file : Picture file
+	 * @return the image of the file for the document, or null if the file is neither a JPEG nor a PNG file
+	 */
+	public static Image encodeOriginal(File file) throws BadElementException, IOException
+	{
+		byte[] bytes;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+			bytes = buffer.array();
+		}
+
+		boolean jpeg = bytes.length > 2 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xd8;
+		boolean png = bytes.length > 8 && (bytes[0] & 0xff) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G';
+		if (!jpeg && !png) return null;
+		return Image.getInstance(bytes);
+	}
+
+	/**
+	 * Build the lossless transparency mask of an image
+	 * @param argb : Pixels of the image in ARGB
+	 * @param w : Width of the image
+	 * @param h : Height of the image
+	 * @return the mask, from the alpha channel
+	 */
+	private static Image alphaMask(int[] argb, int w, int h) throws DocumentException
+	{
+		Image mask = deflated(w, h, 1, 8, (y, buffer, offset) ->
+		{
+			for (int x = 0, i = y * w; x < w; x++, i++)
+			{
+				buffer[offset++] = (byte)(argb[i] >>> 24);
+			}
+		});
+		mask.makeMask();
+		return mask;
+	}
+
+	/**
+	 * Build a lossless image from its rows, deflated with the level of the settings before being given to the document
+	 * @param w : Width of the image
+	 * @param h : Height of the image
+	 * @param components : Number of color components, 1 for gray and 3 for RGB
+	 * @param bpc : Bits per component, 1 or 8
+	 * @param rows : Writer of the rows of the image
+	 * @return the image, already compressed
+	 */
+	private static Image deflated(int w, int h, int components, int bpc, ParallelDeflater.RowWriter rows) throws BadElementException
+	{
+		int rowBytes = (w * components * bpc + 7) / 8;
+		return toImage(w, h, components, bpc, ParallelDeflater.deflate(h, rowBytes, rows, Settings.compressionLevel));
+	}
+
+	/**
+	 * Build a lossless square image strip by strip, each strip being deflated as soon as it is rendered
+	 * @param size : Size of the image
+	 * @param components : Number of color components, 1 for gray and 3 for RGB
+	 * @param bpc : Bits per component, 1 or 8
+	 * @param stripRows : Number of rows of each strip
+	 * @param strips : Renderer of the strips
+	 * @param converter : Conversion of the pixels of the strips
+	 * @return the image, already compressed
+	 */
+	private static Image deflated(int size, int components, int bpc, int stripRows, StripRenderer strips, RowConverter converter) throws BadElementException
+	{
+		ParallelDeflater deflater = new ParallelDeflater((size * components * bpc + 7) / 8, Settings.compressionLevel);
+		for (int top = 0; top < size; top += stripRows)
+		{
+			int[] pixels = ((DataBufferInt) strips.render(top).getRaster().getDataBuffer()).getData();
+			deflater.addRows(Math.min(stripRows, size - top), (y, buffer, offset) -> converter.convert(pixels, y * size, size, buffer, offset));
+		}
+		return toImage(size, size, components, bpc, deflater.finish());
+	}
+
+	/**
+	 * Wrap a compressed stream in an image. The raw image is created directly, Image.getInstance would take
+	 * the bytes for uncompressed pixels and convert the black and white images to CCITT
+	 * @param w : Width of the image
+	 * @param h : Height of the image
+	 * @param components : Number of color components
+	 * @param bpc : Bits per component
+	 * @param data : Zlib stream of the rows
+	 * @return the image, written as is in the document
+	 */
+	private static Image toImage(int w, int h, int components, int bpc, byte[] data) throws BadElementException
+	{
+		Image image = new ImgRaw(w, h, components, bpc, data);
+		image.setDeflated(true);
+		return image;
+	}
+
+	/**
+	 * Convert a row to RGB, 3 bytes per pixel
+	 */
+	private static void toRgb(int[] pixels, int start, int w, byte[] buffer, int offset)
+	{
+		for (int i = start; i < start + w; i++)
+		{
+			buffer[offset++] = (byte)(pixels[i] >> 16);
+			buffer[offset++] = (byte)(pixels[i] >> 8);
+			buffer[offset++] = (byte) pixels[i];
+		}
+	}
+
+	/**
+	 * Convert a row of gray pixels to one byte per pixel, any channel giving the level
+	 */
+	private static void toGray(int[] pixels, int start, int w, byte[] buffer, int offset)
+	{
+		for (int i = start; i < start + w; i++)
+		{
+			buffer[offset++] = (byte) pixels[i];
+		}
+	}
+
+	/**
+	 * Convert a row of black and white pixels to one bit per pixel, the row starting on a new byte and 1 being white
+	 */
+	private static void toBits(int[] pixels, int start, int w, byte[] buffer, int offset)
+	{
+		Arrays.fill(buffer, offset, offset + (w + 7) / 8, (byte) 0);
+		for (int x = 0; x < w; x++)
+		{
+			if ((pixels[start + x] & 0xff) >= 128)
+			{
+				buffer[offset + x / 8] |= 0x80 >>> (x % 8);
+			}
+		}
+	}
+
+	/**
+	 * Encode a transparency mask
+	 * @param w : Width of the mask
+	 * @param h : Height of the mask
+	 * @param rows : Writer of the opacity of the pixels row by row, from 0 to 255
+	 * @return the mask for the document
+	 */
+	public static Image encodeMask(int w, int h, ParallelDeflater.RowWriter rows) throws DocumentException
+	{
+		Image mask = deflated(w, h, 1, 8, rows);
+		mask.makeMask();
+		return mask;
+	}
+
+	/**
+	 * Encode an image as JPEG
+	 * @param image : Opaque image
+	 * @param quality : Quality, from 0 to 100
+	 * @return the bytes of the JPEG file
+	 */
+	private static byte[] toJpeg(BufferedImage image, int quality) throws IOException
+	{
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality / 100f);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes))
+		{
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally
+		{
+			writer.dispose();
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -4,31 +4,53 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
- * Load the symbols images in background
+ * Load the symbols images in background, on all the cores.
+ * Only a thumbnail of each image is decoded, the full resolution is read again from the file when printing,
+ * and the images of the grid are kept by the ThumbnailCache to open the folder again without decoding its files.
+ * The waiting symbols are decoded by priority, the lowest first, and their priorities can be changed while they wait,
+ * so that the symbols the user looks at are loaded before the others.
+ * A file that cannot be read is tried again a few times with an increasing delay, then its symbol is marked as failed
  * @author Etienne Hsler
  * @version 2.0
  */
 public class ImageLoader 
 {
-	private ExecutorService executor;
-	private ArrayList<Future<?>> futures;
+	private ThreadPoolExecutor executor;
+	private ScheduledExecutorService retries;
+	private LoadReport report;
+	private long submitted;
 	
-	private final int POOL_SIZE = 1;
+	private final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+	private final int MAX_ATTEMPTS = 3;
+	private final int RETRY_DELAY = 250;   // ms, doubled after each failed attempt
 	
 	private static ImageLoader instance;
 	
 	private ImageLoader()
 	{
-		// Instantiate an executor that will accept new services
-		executor = Executors.newFixedThreadPool(POOL_SIZE);
-		futures = new ArrayList<>();
+		executor = createExecutor();
+		report = new LoadReport();
+		retries = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 	
 	public static ImageLoader getInstance()
@@ -41,78 +63,198 @@ public class ImageLoader
 	}
 	
 	/**
-	 * Cancel all running threads and prevent new ones to start
+	 * Create an executor taking the waiting services by priority.
+	 * The threads are started in advance, so that even the first services go through the queue
+	 * @return the executor
+	 */
+	private ThreadPoolExecutor createExecutor()
+	{
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+		pool.prestartAllCoreThreads();
+		return pool;
+	}
+	
+	/**
+	 * Cancel all running threads and prevent new ones to start, the next symbols start a new report
 	 */
 	public void shutdown()
 	{
-		futures = new ArrayList<>();
 		executor.shutdownNow();
-		executor = Executors.newFixedThreadPool(POOL_SIZE);
+		executor = createExecutor();
+		report = new LoadReport();
 	}
 	
 	/**
-	 * Remove all results of finished services
+	 * @return the report of the symbols submitted since the last shutdown
 	 */
-	public void manageFutures()
+	public LoadReport getReport()
 	{
-		if (futures.size() > 0)
-		{
-			for (int i = 0; i < futures.size(); i++)
-			{
-				if (futures.get(i).isDone())
-				{
-					futures.remove(futures.get(i));
-				}
-			}
-		}
+		return report;
 	}
 	
 	/**
-	 * Check if the Loader is ready to accept a new service
-	 * @return true if there is no service running
+	 * Change the priority of all the waiting symbols and reorder them
+	 * @param priority : New priority of a symbol, the lowest being loaded first
 	 */
-	public boolean isReady()
+	public void rank(ToIntFunction<Symbol> priority)
 	{
-		return futures.size() == 0;
+		// The queue only orders the services when they are added
+		BlockingQueue<Runnable> queue = executor.getQueue();
+		ArrayList<Runnable> waiting = new ArrayList<>();
+		queue.drainTo(waiting);
+		for (Runnable service : waiting)
+		{
+			LoadService load = (LoadService) service;
+			load.priority = priority.applyAsInt(load.symbol);
+		}
+		queue.addAll(waiting);
 	}
 	
 	/**
 	 * Load an image of a symbol in a new service
 	 * @param symbol : The symbol that will be referenced to Load it's image
+	 * @param priority : Priority of the symbol, the lowest being loaded first
+	 */
+	public void loadSymbol(Symbol symbol, int priority)
+	{
+		report.submitted();
+		executor.execute(new LoadService(symbol, priority, submitted++, report));
+	}
+	
+	/**
+	 * Service loading the image of a symbol, ordered by priority and then by submission
 	 */
-	public void loadSymbol(Symbol symbol)
+	private class LoadService implements Runnable, Comparable<LoadService>
 	{
-		// Submit a new service
-		Future<?> future = executor.submit(new Runnable() 
+		private Symbol symbol;
+		private volatile int priority;
+		private long order;
+		private LoadReport report;
+		private int attempts;
+		
+		LoadService(Symbol symbol, int priority, long order, LoadReport report)
+		{
+			this.symbol = symbol;
+			this.priority = priority;
+			this.order = order;
+			this.report = report;
+		}
+		
+		@Override
+		public int compareTo(LoadService other)
+		{
+			if (priority != other.priority) return Integer.compare(priority, other.priority);
+			return Long.compare(order, other.order);
+		}
+		
+		@Override
+		public void run() 
 		{
-			@Override
-			public void run() 
+			String reason;
+			try 
 			{
-				// Load the image and retry until it succeed
-				boolean finished = false;
-				while (!finished)
+				File file = symbol.getFile();
+				if (file == null)
 				{
-					if (Thread.interrupted()) break;
-					try 
-					{
-						File file = symbol.getFile();
-						if (file != null)
-						{
-							// Load the image
-							BufferedImage image = ImageIO.read(file);
-							symbol.setImage(image);
-							finished = true;
-						}
-					} catch (IOException e) 
-					{
-						System.out.println("Error while loading the symbol " + symbol.getName());
-					} catch (NullPointerException e)
+					reason = "no file";
+				} else if (ThumbnailCache.getInstance().restore(symbol))
+				{
+					loaded();
+					return;
+				} else
+				{
+					if (readThumbnail(file))
 					{
-						System.out.println("No file found for the symbol " + symbol.getName());
+						ThumbnailCache.getInstance().store(symbol);
+						loaded();
+						return;
 					}
+					reason = "unsupported format";
+				}
+			} catch (IOException e) 
+			{
+				// A file still being written or on a slow drive may be readable later, the service waits outside of the pool
+				attempts++;
+				if (attempts < MAX_ATTEMPTS)
+				{
+					retries.schedule(this::retry, RETRY_DELAY << (attempts - 1), TimeUnit.MILLISECONDS);
+					return;
 				}
+				reason = e.getMessage() != null ? e.getMessage() : "read error";
+			} catch (RuntimeException e)
+			{
+				// Decoders fail with any exception on corrupt files, the same file would fail again
+				reason = "corrupt file (" + e.getClass().getSimpleName() + ")";
 			}
-		});
-		futures.add(future);
+			
+			symbol.setFailed();
+			report.failed(symbol, reason);
+			saveThumbnails();
+		}
+		
+		/**
+		 * Count the symbol as loaded
+		 */
+		private void loaded()
+		{
+			report.loaded();
+			saveThumbnails();
+		}
+		
+		/**
+		 * Save the thumbnails of the folder once all its symbols are loaded
+		 */
+		private void saveThumbnails()
+		{
+			if (report.isDone() && report == ImageLoader.this.report) ThumbnailCache.getInstance().save();
+		}
+		
+		/**
+		 * Decode the file of the symbol directly at the size of its thumbnail, skipping the rows and columns not needed,
+		 * so that the full image is never held in memory while browsing the folder
+		 * @param file : File of the symbol
+		 * @return false if no reader recognizes the file
+		 * @throws IOException if the file cannot be read
+		 */
+		private boolean readThumbnail(File file) throws IOException
+		{
+			ImageInputStream input = ImageIO.createImageInputStream(file);
+			if (input == null) throw new IOException("cannot open the file");
+			try
+			{
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+				if (!readers.hasNext()) return false;
+				ImageReader reader = readers.next();
+				try
+				{
+					reader.setInput(input, true, true);
+					int width = reader.getWidth(0);
+					int height = reader.getHeight(0);
+					
+					// Keep one pixel out of factor in each direction, the thumbnail stays at least its size
+					int factor = Math.max(1, Math.max(width, height) / symbol.getThumbnailSize());
+					ImageReadParam param = reader.getDefaultReadParam();
+					param.setSourceSubsampling(factor, factor, 0, 0);
+					BufferedImage thumbnail = reader.read(0, param);
+					if (thumbnail == null) return false;
+					symbol.setImage(thumbnail, width, height);
+					return true;
+				} finally
+				{
+					reader.dispose();
+				}
+			} finally
+			{
+				input.close();
+			}
+		}
+		
+		/**
+		 * Submit the service again, unless the folder changed meanwhile
+		 */
+		private void retry()
+		{
+			if (report == ImageLoader.this.report) executor.execute(this);
+		}
 	}
 }
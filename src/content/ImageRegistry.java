@@ -0,0 +1,114 @@
+package content;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+
+import elements.Main;
+
+/**
+ * Images of a document, each one converted and embedded only once.
+ * A symbol is registered with the largest size it is drawn at in the deck, then every placement on every card refers
+ * to the same image, scaled by the document. The JPEG and PNG files of a suitable size are embedded as they are stored, without
+ * being decoded nor resized. The pictures of the resources are loaded once as well
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ImageRegistry
+{
+	private ConcurrentHashMap<Symbol, Integer> sides;
+	private ConcurrentHashMap<Symbol, Image> symbolImages;
+	private ConcurrentHashMap<String, Image> resources;
+
+	private static final int ORIGINAL_RATIO = 2;   // Largest file embedded as is, relative to the largest size of the symbol
+
+	public ImageRegistry()
+	{
+		sides = new ConcurrentHashMap<>();
+		symbolImages = new ConcurrentHashMap<>();
+		resources = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Register the symbols of a card, keeping the largest size of each symbol.
+	 * A symbol is never embedded larger than its loaded image, the document scales it up without any loss
+	 * @param card : Card drawn in the document
+	 */
+	public void register(Card card)
+	{
+		SymbolLayout layout = card.getLayout();
+		Symbol[] symbols = card.getSymbols();
+		for (int i = 0; i < symbols.length; i++)
+		{
+			int side = (int) Math.min(Math.round(layout.getSide(i) * card.getSize()), Math.max(symbols[i].getSourceWidth(), symbols[i].getSourceHeight()));
+			sides.merge(symbols[i], side, Math::max);
+		}
+	}
+
+	/**
+	 * Get the image of a registered symbol, converted on the first request only
+	 * @param symbol : Symbol of the image
+	 * @param symbolCache : Resized symbols shared by the cards
+	 * @return the image of the symbol, in the largest size it is drawn at
+	 */
+	public Image getSymbolImage(Symbol symbol, SymbolCache symbolCache) throws DocumentException, IOException
+	{
+		Image image = symbolImages.get(symbol);
+		if (image == null)
+		{
+			image = getOriginalImage(symbol);
+			if (image == null) image = ImageEncoder.encodeSymbol(symbolCache.getResizedImage(symbol, sides.get(symbol)));
+			Image previous = symbolImages.putIfAbsent(symbol, image);
+			if (previous != null) image = previous;
+		}
+		return image;
+	}
+
+	/**
+	 * Get the image of a symbol embedded from the bytes of its file, when the file is not much larger than the largest size
+	 * the symbol is drawn at. A file that cannot be embedded as is is left to the encoder
+	 * @param symbol : Symbol of the image
+	 * @return the image of the file, or null if it is converted from the resized symbol
+	 */
+	private Image getOriginalImage(Symbol symbol)
+	{
+		if (symbol.getFile() == null || Math.max(symbol.getSourceWidth(), symbol.getSourceHeight()) > ORIGINAL_RATIO * sides.get(symbol)) return null;
+		try
+		{
+			return ImageEncoder.encodeOriginal(symbol.getFile());
+		} catch (BadElementException | IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Get a picture of the resources, loaded on the first request only
+	 * @param path : Path of the picture in the resources
+	 * @return the picture
+	 */
+	public Image getResource(String path) throws BadElementException, IOException
+	{
+		Image image = resources.get(path);
+		if (image == null)
+		{
+			image = Image.getInstance(Main.class.getResource(path));
+			Image previous = resources.putIfAbsent(path, image);
+			if (previous != null) image = previous;
+		}
+		return image;
+	}
+
+	/**
+	 * Release all the images of the document
+	 */
+	public void release()
+	{
+		sides.clear();
+		symbolImages.clear();
+		resources.clear();
+	}
+}
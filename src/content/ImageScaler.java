@@ -0,0 +1,324 @@
+package content;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Downscale images directly on their int rasters.
+ * The image is halved with a 2x2 box filter while it is at least twice the target size and its dimensions are even,
+ * then a final area-averaging step gives the exact size, with the quality of Image.SCALE_SMOOTH.
+ * The source is read row by row through both steps, the memory used besides the result is a few rows
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ImageScaler
+{
+	private ImageScaler() {}
+
+	/**
+	 * Scale an image to a new resolution
+	 * @param img : Image to scale
+	 * @param width : Width of the scaled image
+	 * @param height : Height of the scaled image
+	 * @return the scaled image, in TYPE_INT_ARGB
+	 */
+	public static BufferedImage scale(Image img, int width, int height)
+	{
+		width = Math.max(1, width);
+		height = Math.max(1, height);
+		int w = img.getWidth(null);
+		int h = img.getHeight(null);
+		RowReader rows = new SourceRows(toBuffered(img, w, h));
+
+		// Progressive halving, only on even dimensions so that no source row or column is dropped
+		while (w >= 2 * width && h >= 2 * height && w % 2 == 0 && h % 2 == 0)
+		{
+			rows = new HalvedRows(rows, w);
+			w /= 2;
+			h /= 2;
+		}
+
+		// Final area-averaging step to the exact size
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] dst = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+		areaAverage(rows, w, h, dst, width, height);
+		return result;
+	}
+
+	/**
+	 * @param img : Source image
+	 * @param w : Width of the image
+	 * @param h : Height of the image
+	 * @return the image itself if it is a BufferedImage, otherwise a copy in TYPE_INT_ARGB
+	 */
+	private static BufferedImage toBuffered(Image img, int w, int h)
+	{
+		if (img instanceof BufferedImage) return (BufferedImage) img;
+		BufferedImage source = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = source.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return source;
+	}
+
+	/**
+	 * Premultiply the color channels by the alpha channel, so that transparent pixels do not bleed their color
+	 * @param pixels : ARGB pixels, modified in place
+	 */
+	private static void premultiply(int[] pixels)
+	{
+		for (int i = 0; i < pixels.length; i++)
+		{
+			int p = pixels[i];
+			int a = p >>> 24;
+			if (a == 255) continue;
+			int r = ((p >> 16) & 0xff) * a / 255;
+			int g = ((p >> 8) & 0xff) * a / 255;
+			int b = (p & 0xff) * a / 255;
+			pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	/**
+	 * Scale an image with an area-averaging filter, each destination pixel being the weighted mean of the source pixels it covers.
+	 * The source rows are filtered horizontally one at a time, only the ones still needed by the vertical pass are kept
+	 * @param rows : Premultiplied source rows, read in increasing order
+	 * @param sw : Source width
+	 * @param sh : Source height
+	 * @param dst : Destination pixels, not premultiplied
+	 * @param dw : Destination width
+	 * @param dh : Destination height
+	 */
+	private static void areaAverage(RowReader rows, int sw, int sh, int[] dst, int dw, int dh)
+	{
+		Filter fx = new Filter(sw, dw);
+		Filter fy = new Filter(sh, dh);
+
+		// The rows of a destination row are consecutive and move forward, a ring of the largest count holds them all
+		int capacity = 1;
+		for (int y = 0; y < dh; y++)
+		{
+			capacity = Math.max(capacity, fy.count[y]);
+		}
+		float[][] filtered = new float[capacity][4 * dw];
+		int[] src = new int[sw];
+		int next = 0;
+
+		for (int y = 0; y < dh; y++)
+		{
+			int start = fy.start[y];
+
+			// Horizontal pass into four float channels of the source rows not filtered yet
+			for (; next < start + fy.count[y]; next++)
+			{
+				rows.read(next, src);
+				float[] tmp = filtered[next % capacity];
+				for (int x = 0; x < dw; x++)
+				{
+					float a = 0, r = 0, g = 0, b = 0;
+					int first = fx.start[x];
+					for (int k = 0; k < fx.count[x]; k++)
+					{
+						int p = src[first + k];
+						float weight = fx.weights[x * fx.stride + k];
+						a += weight * (p >>> 24);
+						r += weight * ((p >> 16) & 0xff);
+						g += weight * ((p >> 8) & 0xff);
+						b += weight * (p & 0xff);
+					}
+					tmp[4 * x] = a;
+					tmp[4 * x + 1] = r;
+					tmp[4 * x + 2] = g;
+					tmp[4 * x + 3] = b;
+				}
+			}
+
+			// Vertical pass and conversion back to non premultiplied ARGB
+			for (int x = 0; x < dw; x++)
+			{
+				float a = 0, r = 0, g = 0, b = 0;
+				for (int k = 0; k < fy.count[y]; k++)
+				{
+					float[] tmp = filtered[(start + k) % capacity];
+					float weight = fy.weights[y * fy.stride + k];
+					a += weight * tmp[4 * x];
+					r += weight * tmp[4 * x + 1];
+					g += weight * tmp[4 * x + 2];
+					b += weight * tmp[4 * x + 3];
+				}
+				int ia = Math.min(255, Math.round(a));
+				if (ia == 0)
+				{
+					dst[y * dw + x] = 0;
+				} else
+				{
+					float unmultiply = 255f / a;
+					int ir = Math.min(255, Math.round(r * unmultiply));
+					int ig = Math.min(255, Math.round(g * unmultiply));
+					int ib = Math.min(255, Math.round(b * unmultiply));
+					dst[y * dw + x] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Premultiplied ARGB rows of an image, so that a large source is never copied whole
+	 */
+	private interface RowReader
+	{
+		/**
+		 * @param y : Index of the row
+		 * @param row : Pixels of the row, filled from index 0
+		 */
+		void read(int y, int[] row);
+	}
+
+	/**
+	 * Rows of a BufferedImage, copied directly from the rasters produced by ImageIO and Java2D,
+	 * any other layout goes through the color model
+	 */
+	private static class SourceRows implements RowReader
+	{
+		private BufferedImage source;
+		private int w;
+		private boolean direct;
+
+		SourceRows(BufferedImage source)
+		{
+			this.source = source;
+			w = source.getWidth();
+			long size = (long) w * source.getHeight();
+			DataBuffer buffer = source.getRaster().getDataBuffer();
+			switch (source.getType())
+			{
+				case BufferedImage.TYPE_INT_ARGB:
+				case BufferedImage.TYPE_INT_RGB:
+					direct = buffer.getSize() == size;
+					break;
+				case BufferedImage.TYPE_3BYTE_BGR:
+					direct = buffer.getSize() == 3 * size;
+					break;
+				case BufferedImage.TYPE_4BYTE_ABGR:
+					direct = buffer.getSize() == 4 * size;
+					break;
+				default:
+					direct = false;
+					break;
+			}
+		}
+
+		@Override
+		public void read(int y, int[] row)
+		{
+			DataBuffer buffer = source.getRaster().getDataBuffer();
+			if (!direct)
+			{
+				source.getRGB(0, y, w, 1, row, 0, w);
+			} else if (source.getType() == BufferedImage.TYPE_3BYTE_BGR)
+			{
+				byte[] data = ((DataBufferByte) buffer).getData();
+				for (int x = 0, j = 3 * y * w; x < w; x++, j += 3)
+				{
+					row[x] = 0xff000000 | ((data[j + 2] & 0xff) << 16) | ((data[j + 1] & 0xff) << 8) | (data[j] & 0xff);
+				}
+			} else if (source.getType() == BufferedImage.TYPE_4BYTE_ABGR)
+			{
+				byte[] data = ((DataBufferByte) buffer).getData();
+				for (int x = 0, j = 4 * y * w; x < w; x++, j += 4)
+				{
+					row[x] = ((data[j] & 0xff) << 24) | ((data[j + 3] & 0xff) << 16) | ((data[j + 2] & 0xff) << 8) | (data[j + 1] & 0xff);
+				}
+			} else
+			{
+				int[] data = ((DataBufferInt) buffer).getData();
+				int alpha = source.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+				for (int x = 0, j = y * w; x < w; x++, j++)
+				{
+					row[x] = data[j] | alpha;
+				}
+			}
+			premultiply(row);
+		}
+	}
+
+	/**
+	 * Rows of another reader halved with a 2x2 box filter
+	 */
+	private static class HalvedRows implements RowReader
+	{
+		private RowReader rows;
+		private int[] row0;
+		private int[] row1;
+
+		/**
+		 * @param rows : Rows to halve
+		 * @param w : Width of the rows to halve
+		 */
+		HalvedRows(RowReader rows, int w)
+		{
+			this.rows = rows;
+			row0 = new int[w];
+			row1 = new int[w];
+		}
+
+		@Override
+		public void read(int y, int[] row)
+		{
+			rows.read(2 * y, row0);
+			rows.read(2 * y + 1, row1);
+			for (int x = 0; x < row0.length / 2; x++)
+			{
+				int p0 = row0[2 * x];
+				int p1 = row0[2 * x + 1];
+				int p2 = row1[2 * x];
+				int p3 = row1[2 * x + 1];
+
+				// Two channels summed at a time, red with blue then alpha with green
+				int rb = (p0 & 0xff00ff) + (p1 & 0xff00ff) + (p2 & 0xff00ff) + (p3 & 0xff00ff) + 0x020002;
+				int ag = ((p0 >>> 8) & 0xff00ff) + ((p1 >>> 8) & 0xff00ff) + ((p2 >>> 8) & 0xff00ff) + ((p3 >>> 8) & 0xff00ff) + 0x020002;
+				row[x] = ((rb >> 2) & 0xff00ff) | (((ag >> 2) & 0xff00ff) << 8);
+			}
+		}
+	}
+
+	/**
+	 * Source pixels covered by each destination pixel along one axis, with the normalized weight of their coverage
+	 */
+	private static class Filter
+	{
+		private int[] start;
+		private int[] count;
+		private float[] weights;
+		private int stride;
+
+		Filter(int sourceLength, int destinationLength)
+		{
+			double scale = (double) sourceLength / destinationLength;
+			stride = (int) Math.ceil(scale) + 1;
+			start = new int[destinationLength];
+			count = new int[destinationLength];
+			weights = new float[destinationLength * stride];
+
+			for (int i = 0; i < destinationLength; i++)
+			{
+				double from = i * scale;
+				double to = Math.min(sourceLength, (i + 1) * scale);
+				int first = (int) Math.floor(from);
+				int last = Math.min(sourceLength - 1, (int) Math.ceil(to) - 1);
+				start[i] = first;
+				count[i] = last - first + 1;
+				double total = to - from;
+				for (int k = 0; k < count[i]; k++)
+				{
+					double coverage = Math.min(to, first + k + 1) - Math.max(from, first + k);
+					weights[i * stride + k] = (float)(coverage / total);
+				}
+			}
+		}
+	}
+}
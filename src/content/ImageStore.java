@@ -0,0 +1,123 @@
+package content;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Full resolution images of the symbols, kept between the generation jobs within a memory budget.
+ * The images are weighted by the memory of their pixels, the least recently used ones being dropped when the budget
+ * of Settings.imageMemory is exceeded, and decoded again from the file of their symbol when they are needed again
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ImageStore
+{
+	private MemoryCache<Symbol, Stored> images;
+	private LongAdder hits;
+	private LongAdder misses;
+
+	private static ImageStore instance;
+
+	private ImageStore()
+	{
+		images = new MemoryCache<>(() -> Runtime.getRuntime().maxMemory() / 100 * Settings.imageMemory, stored -> getBytes(stored.image));
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+
+	/**
+	 * @return the store, created once even when the renderers of a job ask for it at the same time
+	 */
+	public static synchronized ImageStore getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new ImageStore();
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the image of a symbol in full resolution, decoded from its file if it is not in the store or if the file changed
+	 * @param symbol : Symbol of the image
+	 * @return the image of the file of the symbol
+	 * @throws IOException if the file cannot be read anymore
+	 */
+	public BufferedImage get(Symbol symbol) throws IOException
+	{
+		long lastModified = symbol.getFile() != null ? symbol.getFile().lastModified() : 0;
+		Stored stored = images.get(symbol);
+		if (stored != null && stored.lastModified == lastModified)
+		{
+			hits.increment();
+			return stored.image;
+		}
+		misses.increment();
+
+		// The image of a file that changed is replaced by the new one
+		if (stored != null) images.remove(symbol, stored);
+		return images.putIfAbsent(symbol, new Stored(symbol.loadImage(), lastModified)).image;
+	}
+
+	/**
+	 * @param image : Image of the store
+	 * @return the memory used by the pixels of the image
+	 */
+	private static long getBytes(BufferedImage image)
+	{
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	/**
+	 * Drop all the images, when the symbols of the folder are replaced
+	 */
+	public void clear()
+	{
+		images.clear();
+	}
+
+	public long getBytes()
+	{
+		return images.getBytes();
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getEvictions()
+	{
+		return images.getEvictions();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Image store : " + images.size() + " images (" + (images.getBytes() >> 20) + " MB), " + hits.sum() + " hits, " + misses.sum() + " misses, "
+				+ images.getEvictions() + " evictions";
+	}
+
+	/**
+	 * Image of the store with the last modification of its file when it was decoded
+	 */
+	private static class Stored
+	{
+		private BufferedImage image;
+		private long lastModified;
+
+		Stored(BufferedImage image, long lastModified)
+		{
+			this.image = image;
+			this.lastModified = lastModified;
+		}
+	}
+}
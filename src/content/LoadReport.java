@@ -0,0 +1,71 @@
+package content;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Result of the loading of the images of a folder by the ImageLoader.
+ * The symbols whose image could not be loaded are kept with the reason of the failure
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class LoadReport
+{
+	private final AtomicInteger pending;
+	private final ConcurrentLinkedQueue<String> failures;
+
+	LoadReport()
+	{
+		pending = new AtomicInteger();
+		failures = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Count a symbol submitted for loading
+	 */
+	void submitted()
+	{
+		pending.incrementAndGet();
+	}
+
+	/**
+	 * Count a symbol whose image is loaded
+	 */
+	void loaded()
+	{
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * Count a symbol whose image cannot be loaded
+	 * @param symbol : Symbol of the image
+	 * @param reason : Reason of the failure
+	 */
+	void failed(Symbol symbol, String reason)
+	{
+		failures.add((symbol.getFile() != null ? symbol.getFile().getName() : symbol.getName()) + " : " + reason);
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * @return true if no symbol is waiting for its image anymore
+	 */
+	public boolean isDone()
+	{
+		return pending.get() == 0;
+	}
+
+	public int getNbFailures()
+	{
+		return failures.size();
+	}
+
+	/**
+	 * @return the files that could not be loaded, with the reason of each failure
+	 */
+	public ArrayList<String> getFailures()
+	{
+		return new ArrayList<>(failures);
+	}
+}
@@ -0,0 +1,103 @@
+package content;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Values weighted by their memory and kept within a budget, the least recently used ones being dropped first.
+ * The values are created by the callers outside of the lock after a missed get, so two threads missing the same key
+ * may both create a value, but the first one put is kept and returned to both. The value just put is never dropped,
+ * even when it alone exceeds the budget
+ * @param <K> : Type of the keys
+ * @param <V> : Type of the values
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class MemoryCache<K, V>
+{
+	private LinkedHashMap<K, V> values;
+	private LongSupplier maxBytes;
+	private ToLongFunction<V> weigher;
+	private long bytes;
+	private long evictions;
+
+	/**
+	 * @param maxBytes : Budget in bytes, read again on each put
+	 * @param weigher : Memory used by a value in bytes
+	 */
+	public MemoryCache(LongSupplier maxBytes, ToLongFunction<V> weigher)
+	{
+		values = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxBytes = maxBytes;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * @param key : Key of the value
+	 * @return the value, or null if it is not kept
+	 */
+	public synchronized V get(K key)
+	{
+		return values.get(key);
+	}
+
+	/**
+	 * Keep a new value, unless another thread kept one for the same key meanwhile
+	 * @param key : Key of the value
+	 * @param value : New value
+	 * @return the value kept for the key
+	 */
+	public synchronized V putIfAbsent(K key, V value)
+	{
+		V previous = values.putIfAbsent(key, value);
+		if (previous != null) return previous;
+		bytes += weigher.applyAsLong(value);
+
+		Iterator<Map.Entry<K, V>> eldest = values.entrySet().iterator();
+		long max = maxBytes.getAsLong();
+		while (bytes > max && values.size() > 1)
+		{
+			bytes -= weigher.applyAsLong(eldest.next().getValue());
+			eldest.remove();
+			evictions++;
+		}
+		return value;
+	}
+
+	/**
+	 * Drop a value if it is still the one kept for its key
+	 * @param key : Key of the value
+	 * @param value : Value to drop
+	 */
+	public synchronized void remove(K key, V value)
+	{
+		if (values.remove(key, value)) bytes -= weigher.applyAsLong(value);
+	}
+
+	/**
+	 * Drop all the values
+	 */
+	public synchronized void clear()
+	{
+		values.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size()
+	{
+		return values.size();
+	}
+
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+}
@@ -1,26 +1,33 @@
 package content;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
 import java.awt.Desktop;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.Stroke;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.BaseColor;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 
 import elements.LoadingBar;
-import elements.Main;
+import enums.CardShape;
 import panels.Panel;
 
 /**
@@ -45,9 +52,18 @@ public class PDFCreator
 	private double ratio;
 	private double pdfUsableWidth;
 	private double pdfUsableHeight;
+	private boolean vectorMode;
+	private BaseFont namesFont;
+	private boolean usingLines;
+	private boolean usingMarkers;
+	private HashMap<Integer, PdfTemplate> gridTemplates;
+	private HashMap<Integer, Image> cardMasks;
+	private ImageRegistry imageRegistry;
 	
 	private final double A4_WIDTH = 21.0;
 	private final int SIZE_MARKERS = 5;
+	private final double BORDER_WIDTH = 9.0 / 500;   // Stroke of the border pictures
+	private final double BORDER_INSET = 1.0 / 500;
 	
 	public PDFCreator(Panel panel, String path)
 	{
@@ -56,99 +72,329 @@ public class PDFCreator
 	}
 	
 	/**
-	 * Generate an image containing the markers at the sheet margin
+	 * Add a line to the current path, from coordinates measured from the top left corner of the page
+	 * @param cb : Content of the page
+	 * @param x1 : Horizontal start of the line
+	 * @param y1 : Vertical start of the line
+	 * @param x2 : Horizontal end of the line
+	 * @param y2 : Vertical end of the line
+	 */
+	private void addLine(PdfContentByte cb, double x1, double y1, double x2, double y2)
+	{
+		cb.moveTo((float) x1, (float)(pdfHeight - y1));
+		cb.lineTo((float) x2, (float)(pdfHeight - y2));
+	}
+	
+	/**
+	 * Draw the markers at the sheet margin
+	 * @param cb : Content of the template
 	 * @param wMaxLeft : Maximum columns left
 	 * @param hMaxLeft : Maximum rows left
-	 * @return an image with markers at the sheet margin
 	 */
-	private java.awt.Image generateMarkers(int wMaxLeft, int hMaxLeft)
+	private void addMarkers(PdfContentByte cb, int wMaxLeft, int hMaxLeft)
 	{
-		// Create a new image and instantiate it's graphic context
-		BufferedImage img = new BufferedImage((int) pdfWidth, (int) pdfHeight, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = img.createGraphics();
+		cb.saveState();
+		cb.setLineWidth(2);
+		cb.setLineCap(PdfContentByte.LINE_CAP_PROJECTING_SQUARE);
 		
-		// Render Quality
-	    RenderingHints qualityHints = new RenderingHints(
-	    		  RenderingHints.KEY_ANTIALIASING,
-	    		  RenderingHints.VALUE_ANTIALIAS_ON );
-	    qualityHints.put(
-	    		  RenderingHints.KEY_RENDERING,
-	    		  RenderingHints.VALUE_RENDER_QUALITY );
-	    g.setRenderingHints(qualityHints);
-		
-	    // Transparent background
-		g.setColor(new Color(255, 255, 255, 0));
-		g.fillRect(0, 0, (int) pdfWidth, (int) pdfHeight);
-		
-		// Position of the new origin for the markers
-		int shiftX = (int)(pdfUsableWidth - wMax * sizeCards) / 2;
-		int shiftY = (int)(pdfUsableHeight - hMax * sizeCards) / 2;
-		
-		// Draw the markers depending on the margin and the cards size
-		g.setColor(Color.BLACK);
-	    g.setStroke(new BasicStroke(2));
+		// Draw the markers depending on the margin and the cards size, from the origin of the cards
 		for (int i = 0; i < wMaxLeft + 1; i++)
 		{
-			g.drawLine((int)(margin + i * sizeCards + shiftX - 1), (int) margin, (int)(margin + i * sizeCards + shiftX - 1), (int)(margin + SIZE_MARKERS));
-			g.drawLine((int)(margin + i * sizeCards + shiftX - 1), (int)(pdfHeight - margin - SIZE_MARKERS), (int)(margin + i * sizeCards + shiftX - 1), (int)(pdfHeight - margin));
+			double x = margin + i * sizeCards + wCards - 1;
+			addLine(cb, x, margin, x, margin + SIZE_MARKERS);
+			addLine(cb, x, pdfHeight - margin - SIZE_MARKERS, x, pdfHeight - margin);
 		}
 		for (int j = 0; j < hMaxLeft + 1; j++)
 		{
-			g.drawLine((int) margin, (int)(margin + j * sizeCards + shiftY - 1), (int)(margin + SIZE_MARKERS), (int)(margin + j * sizeCards + shiftY - 1));
-			g.drawLine((int)(pdfWidth - SIZE_MARKERS - margin), (int)(margin + j * sizeCards + shiftY - 1), (int)(pdfWidth - margin), (int)(margin + j * sizeCards + shiftY - 1));
+			double y = margin + j * sizeCards + hCards - 1;
+			addLine(cb, margin, y, margin + SIZE_MARKERS, y);
+			addLine(cb, pdfWidth - SIZE_MARKERS - margin, y, pdfWidth - margin, y);
 		}
-		
-		// Close the graphic context
-		g.dispose();
-		
-		return img;
+		cb.stroke();
+		cb.restoreState();
 	}
 	
 	/**
-	 * Generate an image containing the dashed line of the cards
+	 * Draw the dashed lines of the cards, one line per column and per row of the grid
+	 * @param cb : Content of the template
 	 * @param wMaxLeft : Maximum columns left
 	 * @param hMaxLeft : Maximum rows left
-	 * @return an image containing the dashed line of the cards
 	 */
-	private java.awt.Image generateDashedLines(int wMaxLeft, int hMaxLeft)
+	private void addDashedLines(PdfContentByte cb, int wMaxLeft, int hMaxLeft)
 	{
-		// Create a new image and instantiate it's graphic context
-		BufferedImage img = new BufferedImage((int) pdfWidth, (int) pdfHeight, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = img.createGraphics();
-		
-		// Render Quality
-	    g.setStroke(new BasicStroke(2));
-	    RenderingHints qualityHints = new RenderingHints(
-	    		  RenderingHints.KEY_ANTIALIASING,
-	    		  RenderingHints.VALUE_ANTIALIAS_ON );
-	    qualityHints.put(
-	    		  RenderingHints.KEY_RENDERING,
-	    		  RenderingHints.VALUE_RENDER_QUALITY );
-	    g.setRenderingHints( qualityHints );
+		cb.saveState();
+		cb.setLineWidth(1);
+		cb.setLineDash(9, 0);
 		
-	    // Transparent background
-		g.setColor(new Color(255, 255, 255, 0));
-		g.fillRect(0, 0, (int) pdfWidth, (int) pdfHeight);
-
-		// Draw the dashed lines depending on the margin and the cards size
-	    g.setColor(Color.BLACK);
-		Stroke dashed = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0);
-		Graphics2D g2 = (Graphics2D) g;
-        g2.setStroke(dashed);
-        
 		for (int i = 0; i < wMaxLeft + 1; i++)
 		{
-			for (int j = 0; j < hMaxLeft + 1; j++)
+			double x = wShift + i * sizeCards - 1;
+			addLine(cb, x, hShift, x, hShift + hMaxLeft * sizeCards - 3);
+		}
+		for (int j = 0; j < hMaxLeft + 1; j++)
+		{
+			double y = hShift + j * sizeCards - 1;
+			addLine(cb, wShift, y, wShift + wMaxLeft * sizeCards - 3, y);
+		}
+		cb.stroke();
+		cb.restoreState();
+	}
+	
+	/**
+	 * Get the template with the dashed lines and the markers of a grid, built once per grid size and added to every page using it
+	 * @param cb : Content of the page
+	 * @param wMaxLeft : Maximum columns left
+	 * @param hMaxLeft : Maximum rows left
+	 * @return the template of the grid
+	 */
+	private PdfTemplate getGridTemplate(PdfContentByte cb, int wMaxLeft, int hMaxLeft)
+	{
+		int key = wMaxLeft * (hMax + 1) + hMaxLeft;
+		PdfTemplate template = gridTemplates.get(key);
+		if (template == null)
+		{
+			template = cb.createTemplate(pdfWidth, pdfHeight);
+			if (usingLines) addDashedLines(template, wMaxLeft, hMaxLeft);
+			if (usingMarkers) addMarkers(template, wMaxLeft, hMaxLeft);
+			gridTemplates.put(key, template);
+		}
+		return template;
+	}
+	
+	/**
+	 * Get the transparency of a part of the round cards, built once per part and shared by all the cards
+	 * @param size : Size of the cards in pixels
+	 * @param top : First row of the part
+	 * @param rows : Number of rows of the part
+	 * @return the mask of the part
+	 */
+	private Image getCardMask(int size, int top, int rows) throws DocumentException
+	{
+		int key = top * (size + 1) + rows;
+		Image mask = cardMasks.get(key);
+		if (mask == null)
+		{
+			CircleMask circle = CircleMask.get(size);
+			mask = ImageEncoder.encodeMask(size, rows, (y, buffer, offset) -> circle.writeAlphaRow(top + y, buffer, offset));
+			cardMasks.put(key, mask);
+		}
+		return mask;
+	}
+	
+	/**
+	 * Add a card rendered as images, the strips of a card being placed one below the other
+	 * @param doc : Document
+	 * @param card : Card of the images
+	 * @param images : Images of the card, from its top
+	 * @param x : Left side of the card
+	 * @param y : Bottom side of the card
+	 */
+	private void addRasterCard(Document doc, Card card, Image[] images, float x, float y) throws DocumentException
+	{
+		int size = card.getSize();
+		int stripRows = images.length == 1 ? size : card.getStripRows();
+		for (int k = 0; k < images.length; k++)
+		{
+			int top = k * stripRows;
+			int rows = Math.min(stripRows, size - top);
+			images[k].setAbsolutePosition(x, y + (float) sizeCards * (size - top - rows) / size);
+			images[k].scaleAbsolute(sizeCards, (float) sizeCards * rows / size);
+			
+			// Round cards are transparent outside of their circle, so that nested cards do not hide each other
+			if (card.getShape() == CardShape.CIRCLE) images[k].setImageMask(getCardMask(size, top, rows));
+			doc.add(images[k]);
+		}
+	}
+	
+	/**
+	 * Tell the user why the cards could not be generated
+	 * @param cause : Failure of the generation
+	 */
+	private void reportFailure(Throwable cause)
+	{
+		if (cause instanceof OutOfMemoryError)
+		{
+			panel.addMessage("Not enough memory for the cards, lower the DPI or the size of the cards", true);
+		} else if (cause instanceof UncheckedIOException)
+		{
+			panel.addMessage("A symbol image could not be read : " + cause.getCause().getMessage(), true);
+		} else
+		{
+			panel.addMessage("Cards generation failed : " + cause, true);
+			cause.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Compute how many cards can be rendered ahead of the writer
+	 * @param threads : Number of rendering threads
+	 * @param size : Size of the cards in pixels
+	 * @return the number of cards in flight, at least one
+	 */
+	private int computeWindow(int threads, int size)
+	{
+		// A rendered card is kept encoded until it is written, below one byte per pixel, at most a quarter of the heap is used for them
+		long cardBytes = (long) size * size;
+		long budget = Runtime.getRuntime().maxMemory() / 4;
+		return (int) Math.max(1, Math.min(2 * threads, budget / cardBytes));
+	}
+	
+	/**
+	 * Create the task rendering one card of the document
+	 * @param cards : Cards of the document
+	 * @param index : Index of the card in the document, the symbols cards come first and then the names cards
+	 * @param switchPoint : Number of cards in the deck
+	 * @param symbolCache : Resized symbols shared by the cards
+	 * @return the task rendering the card
+	 */
+	private Callable<Image[]> createRenderer(ArrayList<Card> cards, int index, int switchPoint, SymbolCache symbolCache)
+	{
+		return new Callable<Image[]>() 
+		{
+			@Override
+			public Image[] call() throws Exception 
 			{
-				g.drawLine((int)(wShift + i * sizeCards) - 1, hShift, (int)(wShift + i * sizeCards) - 1, (int)(hShift + j * sizeCards - 3));
-				g.drawLine(wShift, (int)(hShift + j * sizeCards) - 1, (int)(wShift + i * sizeCards - 3), (int)(hShift + j * sizeCards) - 1);
+				// In vector mode, only the images of the symbols are prepared, the card itself is composed by the writer.
+				// The names that the font of the document cannot write are drawn on a raster card instead
+				Card card = cards.get(index % switchPoint);
+				if (vectorMode)
+				{
+					if (index < switchPoint) prepareSymbols(card, symbolCache);
+					if (index < switchPoint || canWriteNames(card)) return null;
+				}
+				
+				// Detect if the card should be composed of symbols or of text, each strip rendered in the canvas of the thread is encoded as is
+				if (index < switchPoint)
+				{
+					return ImageEncoder.encodeCard(card.getSize(), card.getStripRows(), top -> card.getImage(symbolCache, top));
+				} else 
+				{
+					return new Image[] {ImageEncoder.encodeNames(card.getSize(), card.getStripRows(), card::getNamesImage)};
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Check that the font of the document has a glyph for every character of the names of a card
+	 * @param card : Card of the names
+	 * @return true if the names can be written as text
+	 */
+	private boolean canWriteNames(Card card)
+	{
+		for (Symbol symbol : card.getSymbols())
+		{
+			String name = symbol.getName();
+			for (int i = 0; i < name.length(); i++)
+			{
+				if (!namesFont.charExists(name.charAt(i))) return false;
 			}
 		}
+		return true;
+	}
+	
+	/**
+	 * Prepare the images of the symbols of a card for the document
+	 * @param card : Card to prepare
+	 * @param symbolCache : Resized symbols shared by the cards
+	 */
+	private void prepareSymbols(Card card, SymbolCache symbolCache) throws DocumentException, IOException
+	{
+		for (Symbol symbol : card.getSymbols())
+		{
+			imageRegistry.getSymbolImage(symbol, symbolCache);
+		}
+	}
+	
+	/**
+	 * Add the path of the outline of a card
+	 * @param cb : Content of the page
+	 * @param shape : Shape of the card
+	 * @param x : Left side of the card
+	 * @param y : Bottom side of the card
+	 * @param inset : Distance between the path and the outline of the card
+	 */
+	private void addOutline(PdfContentByte cb, CardShape shape, float x, float y, float inset)
+	{
+		if (shape == CardShape.CIRCLE)
+		{
+			cb.circle(x + sizeCards / 2f, y + sizeCards / 2f, sizeCards / 2f - inset);
+		} else
+		{
+			cb.rectangle(x + inset, y + inset, sizeCards - 2 * inset, sizeCards - 2 * inset);
+		}
+	}
+	
+	/**
+	 * Compose a card with vector paths, each symbol being placed as an image with its own transform
+	 * @param cb : Content of the page, under the dashed lines and markers
+	 * @param card : Card to add
+	 * @param names : true to write the names of the symbols instead of their images
+	 * @param x : Left side of the card
+	 * @param y : Bottom side of the card
+	 * @param symbolCache : Resized symbols shared by the cards
+	 * @param font : Font of the names
+	 */
+	private void addVectorCard(PdfContentByte cb, Card card, boolean names, float x, float y, SymbolCache symbolCache, BaseFont font) throws DocumentException, IOException
+	{
+		float scale = (float) sizeCards / card.getSize();
+		cb.saveState();
 		
-		// Close the graphic context
-		g.dispose();
+		// White background, the content is clipped to the card
+		cb.setColorFill(BaseColor.WHITE);
+		addOutline(cb, card.getShape(), x, y, 0);
+		cb.fill();
+		addOutline(cb, card.getShape(), x, y, 0);
+		cb.clip();
+		cb.newPath();
 		
-		return img;
+		Symbol[] symbols = card.getSymbols();
+		if (names)
+		{
+			// Same positions as on the raster cards, measured with the font of the document
+			int fontSize = card.getFontSize();
+			int[][] positions = card.getNamesPositions(name -> (int) font.getWidthPoint(name, fontSize));
+			cb.setColorFill(BaseColor.BLACK);
+			cb.beginText();
+			cb.setFontAndSize(font, fontSize * scale);
+			for (int i = 0; i < symbols.length; i++)
+			{
+				cb.setTextMatrix(x + positions[i][0] * scale, y + sizeCards - positions[i][1] * scale);
+				cb.showText(symbols[i].getName());
+			}
+			cb.endText();
+		} else
+		{
+			SymbolLayout layout = card.getLayout();
+			for (int i = 0; i < symbols.length; i++)
+			{
+				Image image = imageRegistry.getSymbolImage(symbols[i], symbolCache);
+				
+				// The unit square of the image is scaled, rotated clockwise as on the raster cards and centered on the symbol.
+				// An image embedded from its file keeps its proportions, centered in the square of the symbol
+				double side = layout.getSide(i) * sizeCards;
+				float a = (float)(side * Math.cos(-layout.getAngle(i)));
+				float b = (float)(side * Math.sin(-layout.getAngle(i)));
+				float cx = (float)(x + layout.getX(i) * sizeCards);
+				float cy = (float)(y + sizeCards - layout.getY(i) * sizeCards);
+				float fw = image.getWidth() / Math.max(image.getWidth(), image.getHeight());
+				float fh = image.getHeight() / Math.max(image.getWidth(), image.getHeight());
+				cb.addImage(image, a * fw, b * fw, -b * fh, a * fh, cx - (a * fw - b * fh) / 2, cy - (b * fw + a * fh) / 2);
+			}
+		}
+		cb.restoreState();
+		
+		// Border with the proportions of the border pictures
+		if (Settings.usingBorders)
+		{
+			float width = (float)(BORDER_WIDTH * sizeCards);
+			cb.saveState();
+			cb.setColorStroke(BaseColor.BLACK);
+			cb.setLineWidth(width);
+			addOutline(cb, card.getShape(), x, y, (float)(BORDER_INSET * sizeCards) + width / 2);
+			cb.stroke();
+			cb.restoreState();
+		}
 	}
 	
 	/**
@@ -162,6 +408,10 @@ public class PDFCreator
 		{
 			// Create a document
 			Document doc = new Document();
+			vectorMode = Settings.vectorMode;
+			gridTemplates = new HashMap<>();
+			cardMasks = new HashMap<>();
+			imageRegistry = new ImageRegistry();
 			pdfWidth = doc.getPageSize().getWidth();
 			pdfHeight = doc.getPageSize().getHeight();
 
@@ -179,36 +429,64 @@ public class PDFCreator
 			int switchPoint = cardsToPrint / 2;
 			int cardIndex = 0;
 
-			// Compute the number of rows and columns necessary
-			wMax = (int) Math.floor(pdfUsableWidth / sizeCards); 
-			hMax = (int) Math.floor(pdfUsableHeight / sizeCards); 
+			// Compute the position of the cards on a sheet, round cards may be nested
+			SheetLayout sheet = new SheetLayout(cards.get(0).getShape(), pdfUsableWidth, pdfUsableHeight, sizeCards);
+			int cardsPerPage = sheet.getNbCards();
+			wMax = sheet.getColumns();
+			hMax = sheet.getRows();
 			int wMaxLeft = wMax;
 			int hMaxLeft = hMax;
-			wCards = (int)(pdfUsableWidth - wMax * sizeCards) / 2;
-			hCards = (int)(pdfUsableHeight - hMax * sizeCards) / 2;
+			wCards = (int)(pdfUsableWidth - sheet.getWidth()) / 2;
+			hCards = (int)(pdfUsableHeight - sheet.getHeight()) / 2;
 			wShift = (int) (margin + wCards);
 			hShift = (int) (margin + hCards);
 			
+			// Dashed lines and markers only for the cards placed on a grid
+			usingLines = Settings.usingLines && sheet.isGrid();
+			usingMarkers = Settings.usingMarkers && sheet.isGrid();
+			
 			// Number of pages to generate
-			int nbPages = (int) Math.ceil((double) cardsToPrint / (wMax * hMax)); 
+			int nbPages = (int) Math.ceil((double) cardsToPrint / cardsPerPage); 
 			
-			// Get the border of the cards (Only using squares at this point)
+			// Get the border of the cards
 			String shape;
 			switch(cards.get(0).getShape())
 			{
-				case SQUARE:
-					shape = "/pictures/squareBorder.png";
+				case CIRCLE:
+					shape = "/pictures/circleBorder.png";
 					break;
+				case SQUARE:
 				default:
 					shape = "/pictures/squareBorder.png";
 			}
 
+			// Resized symbols shared by all the cards of the document
+			SymbolCache symbolCache = new SymbolCache();
+			
+			// In vector mode, each symbol is embedded once in the largest size it is drawn at
+			if (vectorMode)
+			{
+				for (Card card : cards) imageRegistry.register(card);
+			}
+			
+			// Renderers working ahead of the writer, within a bounded window of cards
+			int threads = Runtime.getRuntime().availableProcessors();
+			ExecutorService renderers = Executors.newFixedThreadPool(threads);
+			ArrayDeque<Future<Image[]>> pending = new ArrayDeque<>();
+			int window = computeWindow(threads, cards.get(0).getSize());
+			int nextToRender = 0;
+
 			// Fill the PDF
 			try 
 			{
-				PdfWriter.getInstance(doc, new FileOutputStream(path));
+				PdfWriter writer = PdfWriter.getInstance(doc, new FileOutputStream(path));
+				writer.setCompressionLevel(Settings.compressionLevel);
 				doc.open();
 				
+				// Vector cards are composed under the page content, so that the dashed lines and markers stay on top
+				PdfContentByte under = writer.getDirectContentUnder();
+				namesFont = vectorMode ? BaseFont.createFont(BaseFont.HELVETICA_BOLD, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED) : null;
+				
 				for (int page = 0; page < nbPages; page++)
 				{
 					// Compute the number of cards left to print
@@ -222,68 +500,53 @@ public class PDFCreator
 						hMaxLeft = hMax;
 					}
 					
-					// Background
-					Image dashedLines = null;
-					Image markers = null;
-					if (Settings.usingLines) dashedLines = Image.getInstance(generateDashedLines(wMaxLeft, hMaxLeft), null);
-					if (Settings.usingMarkers) markers = Image.getInstance(generateMarkers(wMaxLeft, hMaxLeft), null);
-					
 					// Add the cards to the PDF
-					outerloop:
-					for (int i = 0; i < hMaxLeft; i++)
+					for (int slot = 0; slot < cardsPerPage && cardsToPrint > 0; slot++)
 					{
-						for (int j = 0; j < wMaxLeft; j++)
+						if (LoadingBar.getInstance().isAborted())
 						{
-							if (LoadingBar.getInstance().isAborted())
-							{
-								break outerloop;   // GOTO Should not be used
-							}
-							if (cardsToPrint > 0)
+							break;
+						}
+						
+						// Keep the renderers busy, then wait for the next card in order
+						while (nextToRender < 2 * switchPoint && pending.size() < window)
+						{
+							pending.add(renderers.submit(createRenderer(cards, nextToRender, switchPoint, symbolCache)));
+							nextToRender++;
+						}
+						Image[] images = pending.poll().get();
+						
+						// Add the component to the PDF
+						float x = (float)(wShift + sheet.getX(slot));
+						float y = (float)(pdfHeight - hShift - sizeCards - sheet.getY(slot));
+						if (vectorMode && images == null)
+						{
+							addVectorCard(under, cards.get(cardIndex % switchPoint), cardIndex >= switchPoint, x, y, symbolCache, namesFont);
+						} else
+						{
+							addRasterCard(doc, cards.get(cardIndex % switchPoint), images, x, y);
+							if (Settings.usingBorders)
 							{
-								Image border = null;
-								if (Settings.usingBorders) border = Image.getInstance(Main.class.getResource(shape));
-								Image img;
-								
-								// Detect if the card should be composed of symbols or of text
-								if (cardsToPrint > switchPoint)
-								{
-									img = Image.getInstance(cards.get(cardIndex).getImage(), null);
-								} else 
-								{
-									img = Image.getInstance(cards.get(cardIndex % switchPoint).getNamesImage(), null);
-								}
-								
-								// Add the component to the PDF
-								img.setAbsolutePosition(wShift + j * sizeCards, pdfHeight - hShift - sizeCards - i * sizeCards);
-								img.scaleAbsolute(sizeCards, sizeCards);
-								doc.add(img);
-								if (Settings.usingBorders)
-								{
-									border.setAbsolutePosition(wShift + j * sizeCards, pdfHeight - hShift - sizeCards - i * sizeCards);
-									border.scaleAbsolute(sizeCards, sizeCards);
-									doc.add(border);
-								}
-								
-								// Update the loading bar
-								LoadingBar.getInstance().increment();
-								
-								// Update the counters
-								cardIndex++;
-								cardsToPrint -= 1;
+								Image border = imageRegistry.getResource(shape);
+								border.setAbsolutePosition(x, y);
+								border.scaleAbsolute(sizeCards, sizeCards);
+								doc.add(border);
 							}
 						}
+						
+						// Update the loading bar
+						LoadingBar.getInstance().increment();
+						
+						// Update the counters
+						cardIndex++;
+						cardsToPrint -= 1;
 					}
 					
 					// Add background if any
-					if (Settings.usingLines)
+					if (usingLines || usingMarkers)
 					{
-						dashedLines.setAbsolutePosition(0, 0);
-						doc.add(dashedLines);
-					}
-					if (Settings.usingMarkers)
-					{
-						markers.setAbsolutePosition(0, 0);
-						doc.add(markers);
+						PdfContentByte over = writer.getDirectContent();
+						over.addTemplate(getGridTemplate(over, wMaxLeft, hMaxLeft), 0, 0);
 					}
 					
 					// Add a new page if there is more cards to generate
@@ -313,9 +576,25 @@ public class PDFCreator
 			{
 				panel.addMessage("Cards generation failed", true);
 				LoadingBar.getInstance().cancel();
+			} catch (ExecutionException e) 
+			{
+				// A renderer failed, its cause is the failure of the card
+				reportFailure(e.getCause());
+				LoadingBar.getInstance().cancel();
+			} catch (OutOfMemoryError e) 
+			{
+				reportFailure(e);
+				LoadingBar.getInstance().cancel();
+			} catch (InterruptedException e) 
+			{
+				Thread.currentThread().interrupt();
+				LoadingBar.getInstance().cancel();
 			} finally 
 			{
-				// Close the LoadingBar and give the focus back to the panel
+				// Stop the renderers, release the resized symbols, close the LoadingBar and give the focus back to the panel
+				renderers.shutdownNow();
+				symbolCache.release();
+				imageRegistry.release();
 				panel.setFocus(true);
 				LoadingBar.getInstance().cancel();
 			}
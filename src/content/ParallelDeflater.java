@@ -0,0 +1,244 @@
+package content;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Zlib compression of the rows of an image on all the cores.
+ * The rows are cut in chunks compressed independently, each chunk ending on a sync flush and starting with the end of the
+ * previous chunk as dictionary, so that the chunks concatenated form a single stream almost as small as a sequential one.
+ * The rows are produced directly in the chunks, the image is never copied as a whole, and they can be given band by band
+ * so that only the compressed stream of the whole image is kept
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ParallelDeflater
+{
+	private static final int CHUNK_BYTES = 128 * 1024;
+	private static final int DICTIONARY_BYTES = 32 * 1024;
+	private static final long ADLER_BASE = 65521;
+
+	private int rowBytes;
+	private int level;
+	private ByteArrayOutputStream stream;
+	private long adler;
+	private byte[] previous;
+
+	/**
+	 * Start the zlib stream of an image
+	 * @param rowBytes : Number of bytes of each row
+	 * @param level : Flate level, from 0 to 9
+	 */
+	public ParallelDeflater(int rowBytes, int level)
+	{
+		this.rowBytes = rowBytes;
+		this.level = level;
+		stream = new ByteArrayOutputStream();
+		stream.write(0x78);
+		stream.write(0x9c);
+		adler = 1;
+		previous = new byte[0];
+	}
+
+	/**
+	 * Writer of the bytes of a row of the image
+	 */
+	public interface RowWriter
+	{
+		/**
+		 * @param y : Index of the row
+		 * @param buffer : Destination of the bytes
+		 * @param offset : Position of the row in the buffer
+		 */
+		void writeRow(int y, byte[] buffer, int offset);
+	}
+
+	/**
+	 * Compress the rows of an image in one band
+	 * @param height : Number of rows
+	 * @param rowBytes : Number of bytes of each row
+	 * @param rows : Writer of the rows
+	 * @param level : Flate level, from 0 to 9
+	 * @return the zlib stream of the rows
+	 */
+	public static byte[] deflate(int height, int rowBytes, RowWriter rows, int level)
+	{
+		ParallelDeflater deflater = new ParallelDeflater(rowBytes, level);
+		deflater.addRows(height, rows);
+		return deflater.finish();
+	}
+
+	/**
+	 * Compress the next band of rows of the image, the writer is not used anymore once the band is compressed
+	 * @param height : Number of rows of the band
+	 * @param rows : Writer of the rows, from 0 for the first row of the band
+	 */
+	public void addRows(int height, RowWriter rows)
+	{
+		int rowsPerChunk = Math.max(1, CHUNK_BYTES / Math.max(1, rowBytes));
+		int nbChunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+		ArrayList<Chunk> chunks = new ArrayList<>(nbChunks);
+		for (int i = 0; i < nbChunks; i++)
+		{
+			chunks.add(new Chunk(i * rowsPerChunk, Math.min(height, (i + 1) * rowsPerChunk), rowBytes, rows, level, previous));
+		}
+		ForkJoinTask.invokeAll(chunks);
+
+		for (Chunk chunk : chunks)
+		{
+			stream.write(chunk.compressed, 0, chunk.length);
+			adler = combine(adler, chunk.adler, (long)(chunk.lastRow - chunk.firstRow) * rowBytes);
+		}
+
+		// The end of the band is the dictionary of the next one
+		if (height > 0) previous = getDictionary(height, rowBytes, rows);
+	}
+
+	/**
+	 * End the stream with an empty final block and the checksum of all the rows
+	 * @return the zlib stream of the image
+	 */
+	public byte[] finish()
+	{
+		Deflater deflater = new Deflater(level, true);
+		try
+		{
+			deflater.finish();
+			byte[] end = new byte[16];
+			while (!deflater.finished())
+			{
+				stream.write(end, 0, deflater.deflate(end));
+			}
+		} finally
+		{
+			deflater.end();
+		}
+		stream.write((int)(adler >>> 24));
+		stream.write((int)(adler >>> 16));
+		stream.write((int)(adler >>> 8));
+		stream.write((int) adler);
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Get the last rows before a position, as a sequential compressor would see them
+	 * @param end : Row following the dictionary
+	 * @param rowBytes : Number of bytes of each row
+	 * @param rows : Writer of the rows
+	 * @return at most the last 32 KB of the rows
+	 */
+	private static byte[] getDictionary(int end, int rowBytes, RowWriter rows)
+	{
+		int dictionaryRows = Math.min(end, (DICTIONARY_BYTES + rowBytes - 1) / rowBytes);
+		byte[] dictionary = new byte[dictionaryRows * rowBytes];
+		for (int i = 0; i < dictionaryRows; i++)
+		{
+			rows.writeRow(end - dictionaryRows + i, dictionary, i * rowBytes);
+		}
+		int offset = Math.max(0, dictionary.length - DICTIONARY_BYTES);
+		return Arrays.copyOfRange(dictionary, offset, dictionary.length);
+	}
+
+	/**
+	 * Checksum of two blocks of data put together, from the checksum of each block
+	 * @param adler1 : Checksum of the first block
+	 * @param adler2 : Checksum of the second block
+	 * @param length2 : Length of the second block
+	 * @return the checksum of the two blocks
+	 */
+	private static long combine(long adler1, long adler2, long length2)
+	{
+		long remainder = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - remainder;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum2 >= 2 * ADLER_BASE) sum2 -= 2 * ADLER_BASE;
+		if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Compression of a range of rows
+	 */
+	private static class Chunk extends ForkJoinTask<Void>
+	{
+		private static final long serialVersionUID = 1L;
+		private int firstRow;
+		private int lastRow;
+		private int rowBytes;
+		private RowWriter rows;
+		private int level;
+		private byte[] previous;
+		private byte[] compressed;
+		private int length;
+		private long adler;
+
+		Chunk(int firstRow, int lastRow, int rowBytes, RowWriter rows, int level, byte[] previous)
+		{
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.rowBytes = rowBytes;
+			this.rows = rows;
+			this.level = level;
+			this.previous = previous;
+		}
+
+		@Override
+		public Void getRawResult()
+		{
+			return null;
+		}
+
+		@Override
+		protected void setRawResult(Void value) {}
+
+		@Override
+		protected boolean exec()
+		{
+			byte[] data = new byte[(lastRow - firstRow) * rowBytes];
+			for (int y = firstRow; y < lastRow; y++)
+			{
+				rows.writeRow(y, data, (y - firstRow) * rowBytes);
+			}
+			Adler32 checksum = new Adler32();
+			checksum.update(data, 0, data.length);
+			adler = checksum.getValue();
+
+			Deflater deflater = new Deflater(level, true);
+			try
+			{
+				// The end of the previous rows, from the previous band for the first chunk
+				byte[] dictionary = firstRow > 0 ? getDictionary(firstRow, rowBytes, rows) : previous;
+				if (dictionary.length > 0) deflater.setDictionary(dictionary);
+
+				deflater.setInput(data);
+				compressed = new byte[Math.max(64, data.length / 4)];
+				length = 0;
+				while (true)
+				{
+					if (length == compressed.length)
+					{
+						byte[] larger = new byte[2 * compressed.length];
+						System.arraycopy(compressed, 0, larger, 0, length);
+						compressed = larger;
+					}
+					length += deflater.deflate(compressed, length, compressed.length - length, Deflater.SYNC_FLUSH);
+
+					// The sync flush is complete when it leaves space in the buffer
+					if (length < compressed.length) break;
+				}
+			} finally
+			{
+				deflater.end();
+			}
+			return true;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package content;
 
+import enums.CardShape;
+
 /**
  * Print settings
  * @author Etienne Hsler
@@ -14,11 +16,20 @@ public class Settings
 	public static double sheetMargin = 0.5;  	// cm
 	public static double cardSize = 5.0;     	// cm
 	public static double cmToInch = 0.393701;   // cm -> inches
+	public static int jpegQuality = 100;		// %, lossless at 100
+	public static int compressionLevel = 6;		// Flate, 0 to 9
+	public static int imageMemory = 25;			// % of the maximum memory, full resolution images kept between jobs
+	
+	// Deck selected in the main panel
+	public static int symbolsPerCard = 8;
+	public static int nbCards = 57;				// cards wanted, at most the full deck of symbolsPerCard
 	
 	// Check boxes
 	public static boolean usingBorders = true;
 	public static boolean usingLines = false;
 	public static boolean usingMarkers = false;
+	public static boolean vectorMode = false;
+	public static CardShape cardShape = CardShape.SQUARE;
 	
 	public static Settings getInstance()
 	{
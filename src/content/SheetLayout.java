@@ -0,0 +1,137 @@
+package content;
+
+import enums.CardShape;
+
+/**
+ * Position of the cards on a sheet.
+ * Square cards are placed on a grid. Round cards are nested in a hexagonal pattern, every other row being shifted
+ * by half a card, when it gives more cards per sheet than the grid.
+ * The positions are the top left corners of the cards, from the top left corner of the block of cards
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class SheetLayout
+{
+	private double[] x;
+	private double[] y;
+	private double width;
+	private double height;
+	private int columns;
+	private int rows;
+	private boolean grid;
+
+	/**
+	 * Compute the positions of the cards fitting in an area
+	 * @param shape : Shape of the cards
+	 * @param usableWidth : Width of the area
+	 * @param usableHeight : Height of the area
+	 * @param cardSize : Size of the cards
+	 */
+	public SheetLayout(CardShape shape, double usableWidth, double usableHeight, double cardSize)
+	{
+		columns = (int) Math.floor(usableWidth / cardSize);
+		rows = (int) Math.floor(usableHeight / cardSize);
+		grid = true;
+
+		// Hexagonal pattern, the rows are closer and the shifted ones may hold one card less
+		if (shape == CardShape.CIRCLE && columns > 0 && rows > 0)
+		{
+			double rowStep = cardSize * Math.sqrt(3) / 2;
+			int hexRows = 1 + (int) Math.floor((usableHeight - cardSize) / rowStep);
+			int shiftedColumns = (int) Math.floor((usableWidth - cardSize / 2) / cardSize);
+			int hexCards = (hexRows + 1) / 2 * columns + hexRows / 2 * shiftedColumns;
+			if (hexCards > columns * rows)
+			{
+				grid = false;
+				x = new double[hexCards];
+				y = new double[hexCards];
+				int card = 0;
+				for (int i = 0; i < hexRows; i++)
+				{
+					boolean shifted = i % 2 == 1;
+					for (int j = 0; j < (shifted ? shiftedColumns : columns); j++)
+					{
+						x[card] = j * cardSize + (shifted ? cardSize / 2 : 0);
+						y[card] = i * rowStep;
+						card++;
+					}
+				}
+				width = (hexRows > 1 && shiftedColumns == columns ? columns + 0.5 : columns) * cardSize;
+				height = (hexRows - 1) * rowStep + cardSize;
+				rows = hexRows;
+				return;
+			}
+		}
+
+		// Grid, row by row
+		x = new double[columns * rows];
+		y = new double[columns * rows];
+		for (int i = 0; i < rows; i++)
+		{
+			for (int j = 0; j < columns; j++)
+			{
+				x[i * columns + j] = j * cardSize;
+				y[i * columns + j] = i * cardSize;
+			}
+		}
+		width = columns * cardSize;
+		height = rows * cardSize;
+	}
+
+	/**
+	 * @return the number of cards on a sheet
+	 */
+	public int getNbCards()
+	{
+		return x.length;
+	}
+
+	/**
+	 * @param i : Index of the card on the sheet
+	 * @return the horizontal position of the card
+	 */
+	public double getX(int i)
+	{
+		return x[i];
+	}
+
+	/**
+	 * @param i : Index of the card on the sheet
+	 * @return the vertical position of the card
+	 */
+	public double getY(int i)
+	{
+		return y[i];
+	}
+
+	public double getWidth()
+	{
+		return width;
+	}
+
+	public double getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return the number of cards in the longest row
+	 */
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @return true if the cards are placed on a grid, where cutting lines and markers apply
+	 */
+	public boolean isGrid()
+	{
+		return grid;
+	}
+}
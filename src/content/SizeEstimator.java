@@ -0,0 +1,80 @@
+package content;
+
+import enums.CardShape;
+
+/**
+ * Estimate of the size of a document before it is generated, from the print settings.
+ * The bytes per pixel of the images were measured on decks of photos for cards of REFERENCE_PIXELS, for each JPEG quality.
+ * The symbols get smoother per pixel as the cards get larger in pixels, the more so without JPEG, while the names cost
+ * a number of bytes per name growing with the size of the text. Round cards only fill the circle of the card.
+ * The symbols embedded in vector mode as their original files are estimated as if they were encoded again
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class SizeEstimator
+{
+	private static final int[] QUALITIES = {10, 30, 50, 70, 85, 95, 100};
+	private static final double[] CARD_BYTES = {0.028, 0.041, 0.050, 0.062, 0.084, 0.138, 0.093};		// lossless at 100
+	private static final double[] SYMBOL_BYTES = {0.099, 0.130, 0.150, 0.177, 0.227, 0.343, 0.161};	// lossless at 100
+	private static final double JPEG_EXPONENT = -0.5;
+	private static final double LOSSLESS_EXPONENT = -1.2;
+	private static final double ROUND_CARD_RATIO = 0.72;
+	private static final int NAME_GRAY_BYTES = 1460;
+	private static final int NAME_BITS_BYTES = 370;
+	private static final double NAMES_GRAY_EXPONENT = 1.2;
+	private static final double NAMES_BITS_EXPONENT = 1.3;
+	private static final double ROUND_NAMES_GRAY_RATIO = 0.53;
+	private static final int VECTOR_CARD_BYTES = 250;
+	private static final double REFERENCE_PIXELS = 590;		// 5 cm at 300 DPI
+	private static final double TYPICAL_SHAPE_RADIUS = 0.6;
+
+	private SizeEstimator() {}
+
+	/**
+	 * Estimate the size of the document of a deck with the current settings
+	 * @param symbolsPerCard : Number of symbols on each card
+	 * @param nbCards : Number of cards of the deck
+	 * @return the estimated size in bytes
+	 */
+	public static long estimate(int symbolsPerCard, int nbCards)
+	{
+		double cardPixels = Settings.cardSize * Settings.cmToInch * Settings.DPI;
+		double scale = cardPixels / REFERENCE_PIXELS;
+		double detail = Math.pow(scale, Settings.jpegQuality < ImageEncoder.LOSSLESS ? JPEG_EXPONENT : LOSSLESS_EXPONENT);
+		boolean round = Settings.cardShape == CardShape.CIRCLE;
+
+		if (Settings.vectorMode)
+		{
+			// Each symbol once in its largest size, then the content of the cards
+			double side = SymbolLayout.getLargestSide(symbolsPerCard, Settings.cardShape, TYPICAL_SHAPE_RADIUS) * cardPixels;
+			double symbols = nbCards * side * side * interpolate(SYMBOL_BYTES) * detail;
+			return (long)(symbols + 2L * nbCards * VECTOR_CARD_BYTES);
+		}
+
+		// One bitmap per card of symbols and per names card
+		double cards = nbCards * cardPixels * cardPixels * interpolate(CARD_BYTES) * detail * (round ? ROUND_CARD_RATIO : 1);
+		double name;
+		if (Settings.DPI >= ImageEncoder.HIGH_DPI)
+		{
+			name = NAME_BITS_BYTES * Math.pow(scale, NAMES_BITS_EXPONENT);
+		} else
+		{
+			name = NAME_GRAY_BYTES * Math.pow(scale, NAMES_GRAY_EXPONENT) * (round ? ROUND_NAMES_GRAY_RATIO : 1);
+		}
+		return (long)(cards + (double) nbCards * symbolsPerCard * name);
+	}
+
+	/**
+	 * Bytes per pixel for the JPEG quality of the settings, interpolated between the measured qualities
+	 * @param bytes : Bytes per pixel measured for each quality
+	 * @return the bytes per pixel
+	 */
+	private static double interpolate(double[] bytes)
+	{
+		int quality = Math.max(QUALITIES[0], Math.min(ImageEncoder.LOSSLESS, Settings.jpegQuality));
+		int i = 1;
+		while (i < QUALITIES.length - 1 && QUALITIES[i] < quality) i++;
+		double t = (double)(quality - QUALITIES[i - 1]) / (QUALITIES[i] - QUALITIES[i - 1]);
+		return bytes[i - 1] + t * (bytes[i] - bytes[i - 1]);
+	}
+}
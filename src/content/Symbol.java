@@ -1,14 +1,19 @@
 package content;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import javax.imageio.ImageIO;
+
 import elements.Mouse;
 import panels.Panel;
 
@@ -30,10 +35,13 @@ public class Symbol
 	private boolean selected;
 	private boolean hover;
 	private boolean imageLoading;
-	private Image image;
+	private volatile boolean failed;
 	private Image loadingImage;
-	private BufferedImage scaledImage;
+	private volatile BufferedImage scaledImage;
 	private BufferedImage scaledPreviewImage;
+	private int sourceWidth;
+	private int sourceHeight;
+	private double shapeRadius;
 	private Panel panel;
 	private Color preselectionColor;
 	private ArrayList<Tag> tags;
@@ -42,6 +50,11 @@ public class Symbol
 	private final int OFFSET_SIZE = 10;
 	private final int BORDER_SIZE = 4;
 	private final int PREVIEW_SIZE = 60;
+	private final int THUMBNAIL_RATIO = 2;   // Decoded size of the thumbnail relative to the grid image
+	private final int ALPHA_THRESHOLD = 32;
+	private static final Color FAILED_BACKGROUND = new Color(255, 225, 225);
+	private static final Color FAILED_COLOR = new Color(200, 40, 40);
+	private static final BasicStroke FAILED_STROKE = new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
 	
 	public Symbol(Panel panel, Image loadingImage, String name, String ext, int size, File file)
 	{
@@ -78,6 +91,22 @@ public class Symbol
 		this.imageLoading = imageLoading;
 	}
 	
+	/**
+	 * @return true if the image of the symbol could not be loaded, the symbol cannot be used anymore
+	 */
+	public boolean isFailed()
+	{
+		return failed;
+	}
+	
+	/**
+	 * Mark the image of the symbol as impossible to load
+	 */
+	public void setFailed()
+	{
+		failed = true;
+	}
+	
 	public ArrayList<Tag> getTags()
 	{
 		return tags;
@@ -128,11 +157,6 @@ public class Symbol
 		return width;
 	}
 	
-	public Image getImage()
-	{
-		return image;
-	}
-	
 	public int getHeight()
 	{
 		return height;
@@ -144,14 +168,125 @@ public class Symbol
 	}
 	
 	/**
-	 * Set the image of the symbol at different resolution
-	 * @param image : Image to be associated with the symbol
+	 * Set the images of the symbol displayed in the grid and in the preview, from a thumbnail of its file.
+	 * Only these small images are kept, the file is decoded again in full resolution when the symbol is printed
+	 * @param thumbnail : Image of the file decoded in a reduced resolution, see getThumbnailSize
+	 * @param sourceWidth : Width of the image in the file
+	 * @param sourceHeight : Height of the image in the file
+	 */
+	public void setImage(BufferedImage thumbnail, int sourceWidth, int sourceHeight)
+	{
+		setImages(resize(thumbnail, getGridSize(), getGridSize()), resize(thumbnail, PREVIEW_SIZE - OFFSET_SIZE, PREVIEW_SIZE - OFFSET_SIZE), sourceWidth, sourceHeight);
+	}
+	
+	/**
+	 * Set the images of the symbol from the image of the grid kept by the ThumbnailCache
+	 * @param gridImage : Image displayed in the grid, see getGridImage
+	 * @param sourceWidth : Width of the image in the file
+	 * @param sourceHeight : Height of the image in the file
+	 */
+	public void restoreImage(BufferedImage gridImage, int sourceWidth, int sourceHeight)
+	{
+		setImages(gridImage, resize(gridImage, PREVIEW_SIZE - OFFSET_SIZE, PREVIEW_SIZE - OFFSET_SIZE), sourceWidth, sourceHeight);
+	}
+	
+	/**
+	 * Set the images displayed by the symbol
+	 * @param scaled : Image of the grid
+	 * @param preview : Image of the preview
+	 * @param sourceWidth : Width of the image in the file
+	 * @param sourceHeight : Height of the image in the file
+	 */
+	private void setImages(BufferedImage scaled, BufferedImage preview, int sourceWidth, int sourceHeight)
+	{
+		this.sourceWidth = sourceWidth;
+		this.sourceHeight = sourceHeight;
+		scaledPreviewImage = preview;
+		shapeRadius = computeShapeRadius(scaled);
+		
+		// Set last, the symbol is loaded once the grid image is set
+		scaledImage = scaled;
+	}
+	
+	/**
+	 * @return the image displayed in the grid, null until the symbol is loaded
+	 */
+	public BufferedImage getGridImage()
+	{
+		return scaledImage;
+	}
+	
+	/**
+	 * @return the side of the image displayed in the grid
+	 */
+	public int getGridSize()
+	{
+		return width - OFFSET_SIZE;
+	}
+	
+	/**
+	 * @return the smallest size of the thumbnail given to setImage, for a sharp image in the grid
+	 */
+	public int getThumbnailSize()
+	{
+		return THUMBNAIL_RATIO * getGridSize();
+	}
+	
+	public int getSourceWidth()
+	{
+		return sourceWidth;
+	}
+	
+	public int getSourceHeight()
+	{
+		return sourceHeight;
+	}
+	
+	/**
+	 * Decode the image of the file of the symbol in full resolution. The image is not kept by the symbol
+	 * @return the image of the file
+	 * @throws IOException if the file cannot be read anymore
+	 */
+	public BufferedImage loadImage() throws IOException
+	{
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) throw new IOException("Unsupported format for the symbol " + name);
+		return image;
+	}
+	
+	/**
+	 * Radius of the circle enclosing the opaque pixels of the symbol, used to place it on the cards
+	 * @return the radius relative to the side of the square image of the symbol
+	 */
+	public double getShapeRadius()
+	{
+		return shapeRadius;
+	}
+	
+	/**
+	 * Compute the radius of the circle centered on the image and enclosing all its opaque pixels
+	 * @param img : Square image of the symbol
+	 * @return the radius relative to the side of the image
 	 */
-	public void setImage(Image image)
+	private double computeShapeRadius(BufferedImage img)
 	{
-		this.image = image;
-		scaledImage = resize(image, width - OFFSET_SIZE, height - OFFSET_SIZE);
-		scaledPreviewImage = resize(image, PREVIEW_SIZE - OFFSET_SIZE, PREVIEW_SIZE - OFFSET_SIZE);
+		int side = img.getWidth();
+		double center = side / 2.0;
+		double maxDistance = 0;
+		for (int j = 0; j < img.getHeight(); j++)
+		{
+			for (int i = 0; i < side; i++)
+			{
+				if ((img.getRGB(i, j) >>> 24) > ALPHA_THRESHOLD)
+				{
+					// Farthest corner of the pixel from the center
+					double dx = Math.max(Math.abs(i - center), Math.abs(i + 1 - center));
+					double dy = Math.max(Math.abs(j - center), Math.abs(j + 1 - center));
+					maxDistance = Math.max(maxDistance, dx * dx + dy * dy);
+				}
+			}
+		}
+		return Math.sqrt(maxDistance) / side;
 	}
 	
 	/**
@@ -160,7 +295,7 @@ public class Symbol
 	 */
 	public boolean isLoaded()
 	{
-		return image != null;
+		return scaledImage != null;
 	}
 	
 	/**
@@ -206,11 +341,22 @@ public class Symbol
 	}
 	
 	/**
-	 * Return the image of the symbol in a given size
+	 * Return the image of the symbol of the grid in a given size
 	 * @param size : Size of the image
 	 * @return the image of the symbol resized
 	 */
 	public BufferedImage getResizedImage(int size)
+	{
+		return resize(scaledImage, size, size);
+	}
+	
+	/**
+	 * Return an image of the symbol in a given size, centered in a square
+	 * @param image : Image of the symbol, see loadImage
+	 * @param size : Size of the image
+	 * @return the image of the symbol resized
+	 */
+	public BufferedImage getResizedImage(Image image, int size)
 	{
 		return resize(image, size, size);
 	}
@@ -249,6 +395,9 @@ public class Symbol
 					// Add symbol
 					available = panel.addSelectedSymbol(this);
 					if (available) selected = true;
+				} else if (failed)
+				{
+					panel.addMessage("L'image du symbole n'a pas pu tre charge", true);
 				} else 
 				{
 					panel.addMessage("Le symbole n'a pas fini de charger", false);
@@ -288,6 +437,19 @@ public class Symbol
 		if (scaledImage != null)
 		{
 			g.drawImage(scaledImage, x + (width - scaledImage.getWidth(null)) / 2, y + (height - scaledImage.getHeight(null)) / 2, null);
+		} else if (failed)
+		{
+			// Red cross on a light background instead of the image
+			Graphics2D g2d = (Graphics2D) g;
+			Stroke oldStroke = g2d.getStroke();
+			g.setColor(FAILED_BACKGROUND);
+			g.fillRect(x, y, width, height);
+			g.setColor(FAILED_COLOR);
+			g2d.setStroke(FAILED_STROKE);
+			int margin = width / 4;
+			g.drawLine(x + margin, y + margin, x + width - margin, y + height - margin);
+			g.drawLine(x + width - margin, y + margin, x + margin, y + height - margin);
+			g2d.setStroke(oldStroke);
 		} else
 		{
 			Graphics2D g2d = (Graphics2D) g;
@@ -354,7 +516,7 @@ public class Symbol
 		int w = img.getWidth(null);
 		int h = img.getHeight(null);
 		double ratio = Math.max((double) w / width, (double) h / height);
-	    Image tmp = img.getScaledInstance((int) (w / ratio), (int)(h / ratio), Image.SCALE_SMOOTH);
+	    BufferedImage tmp = ImageScaler.scale(img, (int) (w / ratio), (int)(h / ratio));
 	    BufferedImage dimg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
 	    // Place the scaled image into a new image that specify the new size
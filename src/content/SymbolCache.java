@@ -0,0 +1,167 @@
+package content;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Resized images of the symbols shared by all the cards of a generation job.
+ * The full resolution images come from the ImageStore, which keeps them between the jobs within its memory budget.
+ * Each symbol is rescaled once per size instead of once per card, and the images are dropped by a release at the end of the job.
+ * The resized and the rotated images are kept per symbol, size and rotation step, the least recently used ones being dropped
+ * when they exceed the memory budget of their kind, so that large cards of large photos still fit in the heap
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class SymbolCache
+{
+	private MemoryCache<Variant, BufferedImage> resizedImages;
+	private MemoryCache<Variant, BufferedImage> rotatedImages;
+
+	public SymbolCache()
+	{
+		resizedImages = new MemoryCache<>(() -> Runtime.getRuntime().maxMemory() / 8, SymbolCache::getBytes);
+		rotatedImages = new MemoryCache<>(() -> Runtime.getRuntime().maxMemory() / 8, SymbolCache::getBytes);
+	}
+
+	/**
+	 * Get the image of a symbol in full resolution from the ImageStore
+	 * @param symbol : Symbol to decode
+	 * @return the image of the file of the symbol
+	 * @throws UncheckedIOException if the file cannot be read anymore
+	 */
+	public BufferedImage getFullImage(Symbol symbol)
+	{
+		try
+		{
+			return ImageStore.getInstance().get(symbol);
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Get the image of a symbol in a given size, resized on the first request only
+	 * @param symbol : Symbol to resize
+	 * @param size : Size of the image
+	 * @return the resized image of the symbol
+	 */
+	public BufferedImage getResizedImage(Symbol symbol, int size)
+	{
+		Variant variant = new Variant(symbol, size, 0);
+		BufferedImage image = resizedImages.get(variant);
+		if (image != null) return image;
+		return resizedImages.putIfAbsent(variant, symbol.getResizedImage(getFullImage(symbol), size));
+	}
+
+	/**
+	 * Get an image of a symbol to be drawn with its own transform in a given size, without any intermediate image of that size.
+	 * The full image is used as is unless it is at least twice as large, a single bilinear step being enough until then
+	 * @param symbol : Symbol to draw
+	 * @param size : Size of the symbol on the card
+	 * @return the full image, or its version resized to the given size
+	 */
+	public Image getSourceImage(Symbol symbol, int size)
+	{
+		if (Math.max(symbol.getSourceWidth(), symbol.getSourceHeight()) < 2 * size) return getFullImage(symbol);
+		return getResizedImage(symbol, size);
+	}
+
+	/**
+	 * Get the image of a symbol in a given size and rotation, rotated on the first request only.
+	 * The image is enlarged to contain the whole rotated symbol, whose center stays at the center of the image
+	 * @param symbol : Symbol to rotate
+	 * @param size : Size of the symbol before the rotation
+	 * @param rotation : Rotation step, see SymbolLayout
+	 * @return the rotated image of the symbol
+	 */
+	public BufferedImage getRotatedImage(Symbol symbol, int size, int rotation)
+	{
+		if (rotation % SymbolLayout.ROTATIONS == 0) return getResizedImage(symbol, size);
+
+		Variant variant = new Variant(symbol, size, rotation);
+		BufferedImage image = rotatedImages.get(variant);
+		if (image != null) return image;
+		return rotatedImages.putIfAbsent(variant, rotate(getResizedImage(symbol, size), SymbolLayout.toAngle(rotation)));
+	}
+
+	/**
+	 * Rotate an image around its center
+	 * @param source : Image to rotate
+	 * @param angle : Angle of the rotation, in radians
+	 * @return the rotated image, in TYPE_INT_ARGB_PRE for a fast copy on the cards
+	 */
+	private static BufferedImage rotate(BufferedImage source, double angle)
+	{
+		int w = source.getWidth();
+		int h = source.getHeight();
+		double cos = Math.abs(Math.cos(angle));
+		double sin = Math.abs(Math.sin(angle));
+		int rw = (int) Math.ceil(w * cos + h * sin);
+		int rh = (int) Math.ceil(w * sin + h * cos);
+
+		BufferedImage result = new BufferedImage(rw, rh, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = result.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.translate(rw / 2.0, rh / 2.0);
+		g.rotate(angle);
+		g.translate(-w / 2.0, -h / 2.0);
+		g.drawImage(source, 0, 0, null);
+		g.dispose();
+		return result;
+	}
+
+	/**
+	 * @param image : Image of the cache
+	 * @return the memory used by the pixels of the image
+	 */
+	private static long getBytes(BufferedImage image)
+	{
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	/**
+	 * Release all the images of the job
+	 */
+	public void release()
+	{
+		resizedImages.clear();
+		rotatedImages.clear();
+	}
+
+	/**
+	 * Key of a resized or rotated image, rotation 0 for a resized one
+	 */
+	private static class Variant
+	{
+		private Symbol symbol;
+		private int size;
+		private int rotation;
+
+		Variant(Symbol symbol, int size, int rotation)
+		{
+			this.symbol = symbol;
+			this.size = size;
+			this.rotation = rotation;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Variant)) return false;
+			Variant variant = (Variant) other;
+			return symbol == variant.symbol && size == variant.size && rotation == variant.rotation;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (System.identityHashCode(symbol) * 31 + size) * 31 + rotation;
+		}
+	}
+}
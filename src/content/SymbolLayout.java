@@ -0,0 +1,322 @@
+package content;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import enums.CardShape;
+
+/**
+ * Placement of the symbols on a card, at varied scales and rotations without overlap.
+ * Each symbol is bounded by the circle enclosing the opaque pixels of its image, and the circles already
+ * placed are kept in a uniform grid so that a candidate position is only tested against its neighbors.
+ * The rotations are quantized to a fixed number of steps, so that the rotated images can be shared between the cards.
+ * All the values are in card units, the card being the square [0, 1] x [0, 1]
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class SymbolLayout
+{
+	private double[] x;
+	private double[] y;
+	private double[] side;
+	private int[] rotation;
+
+	public static final int ROTATIONS = 16;
+
+	private static final double MARGIN = 0.04;
+	private static final double GAP = 0.01;
+	private static final double FILL_RATIO = 0.5;
+	private static final double[] SCALES = {1.3, 1.2, 1.1, 1.0, 0.9, 0.8, 0.7, 0.6, 0.5, 0.4, 0.3, 0.2, 0.1};
+	private static final int FIRST_RANDOM_SCALE = 1;
+	private static final int LAST_RANDOM_SCALE = 7;
+	private static final int ATTEMPTS = 80;
+	private static final double MIN_SHAPE_RADIUS = 0.2;
+
+	private SymbolLayout(int nbSymbols)
+	{
+		x = new double[nbSymbols];
+		y = new double[nbSymbols];
+		side = new double[nbSymbols];
+		rotation = new int[nbSymbols];
+	}
+
+	/**
+	 * @param i : Index of the symbol
+	 * @return the x coordinate of the center of the symbol
+	 */
+	public double getX(int i)
+	{
+		return x[i];
+	}
+
+	/**
+	 * @param i : Index of the symbol
+	 * @return the y coordinate of the center of the symbol
+	 */
+	public double getY(int i)
+	{
+		return y[i];
+	}
+
+	/**
+	 * @param i : Index of the symbol
+	 * @return the side of the square image of the symbol
+	 */
+	public double getSide(int i)
+	{
+		return side[i];
+	}
+
+	/**
+	 * @param i : Index of the symbol
+	 * @return the rotation step of the symbol, from 0 to ROTATIONS - 1
+	 */
+	public int getRotation(int i)
+	{
+		return rotation[i];
+	}
+
+	/**
+	 * @param i : Index of the symbol
+	 * @return the rotation of the symbol around its center, in radians
+	 */
+	public double getAngle(int i)
+	{
+		return toAngle(rotation[i]);
+	}
+
+	/**
+	 * @param rotation : Rotation step
+	 * @return the angle of the rotation step, in radians
+	 */
+	public static double toAngle(int rotation)
+	{
+		return rotation * 2 * Math.PI / ROTATIONS;
+	}
+
+	/**
+	 * Reference radius of the symbols, so that they cover a constant part of the card
+	 * @param nbSymbols : Number of symbols on the card
+	 * @param shape : Shape of the card
+	 * @return the radius of a symbol at scale 1
+	 */
+	private static double getBaseRadius(int nbSymbols, CardShape shape)
+	{
+		double regionArea = shape == CardShape.CIRCLE ? Math.PI * Math.pow(0.5 - MARGIN, 2) : Math.pow(1 - 2 * MARGIN, 2);
+		return Math.sqrt(FILL_RATIO * regionArea / (nbSymbols * Math.PI));
+	}
+
+	/**
+	 * Largest side a symbol is usually drawn at, at the biggest random scale
+	 * @param nbSymbols : Number of symbols on the card
+	 * @param shape : Shape of the card
+	 * @param shapeRadius : Radius of the circle enclosing the opaque pixels of the symbol, relative to the side of its image
+	 * @return the side of the image of the symbol
+	 */
+	public static double getLargestSide(int nbSymbols, CardShape shape, double shapeRadius)
+	{
+		return getBaseRadius(nbSymbols, shape) * SCALES[FIRST_RANDOM_SCALE] / Math.max(MIN_SHAPE_RADIUS, shapeRadius);
+	}
+
+	/**
+	 * Compute the layout of a card
+	 * @param shapeRadii : Radius of the circle enclosing the opaque pixels of each symbol, relative to the side of its image
+	 * @param shape : Shape of the card
+	 * @param random : Random generator of the card
+	 * @return the layout of the symbols
+	 */
+	public static SymbolLayout compute(double[] shapeRadii, CardShape shape, SplittableRandom random)
+	{
+		int n = shapeRadii.length;
+		SymbolLayout layout = new SymbolLayout(n);
+		if (n == 0) return layout;
+
+		double baseRadius = getBaseRadius(n, shape);
+
+		// Random scale of each symbol, the biggest ones are placed first
+		int[] scaleIndex = new int[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+		{
+			scaleIndex[i] = FIRST_RANDOM_SCALE + random.nextInt(LAST_RANDOM_SCALE - FIRST_RANDOM_SCALE + 1);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(scaleIndex[a], scaleIndex[b]));
+
+		SpatialGrid grid = new SpatialGrid(2 * baseRadius * SCALES[0] + GAP, n);
+		for (int k = 0; k < n; k++)
+		{
+			int i = order[k];
+			double rho = Math.max(MIN_SHAPE_RADIUS, shapeRadii[i]);
+			boolean placed = false;
+
+			// Shrink the symbol to the next scale until it fits somewhere
+			for (int s = scaleIndex[i]; s < SCALES.length && !placed; s++)
+			{
+				double radius = baseRadius * SCALES[s];
+				for (int attempt = 0; attempt < ATTEMPTS && !placed; attempt++)
+				{
+					double cx;
+					double cy;
+					if (shape == CardShape.CIRCLE)
+					{
+						// Uniform point in the disc where the symbol stays inside the card
+						double r = Math.sqrt(random.nextDouble()) * Math.max(0, 0.5 - MARGIN - radius);
+						double theta = random.nextDouble() * 2 * Math.PI;
+						cx = 0.5 + r * Math.cos(theta);
+						cy = 0.5 + r * Math.sin(theta);
+					} else
+					{
+						double span = Math.max(0, 1 - 2 * (MARGIN + radius));
+						cx = MARGIN + radius + random.nextDouble() * span;
+						cy = MARGIN + radius + random.nextDouble() * span;
+					}
+
+					if (!grid.collides(cx, cy, radius + GAP))
+					{
+						grid.insert(cx, cy, radius);
+						layout.x[i] = cx;
+						layout.y[i] = cy;
+						layout.side[i] = radius / rho;
+						layout.rotation[i] = random.nextInt(ROTATIONS);
+						placed = true;
+					}
+				}
+			}
+
+			// A symbol that never fits at random is placed by a full search at the smallest scale
+			if (!placed)
+			{
+				double radius = baseRadius * SCALES[SCALES.length - 1];
+				double[] position = searchPosition(grid, shape, radius);
+				if (position == null) throw new IllegalStateException("No room left on the card for " + n + " symbols");
+				grid.insert(position[0], position[1], radius);
+				layout.x[i] = position[0];
+				layout.y[i] = position[1];
+				layout.side[i] = radius / rho;
+				layout.rotation[i] = random.nextInt(ROTATIONS);
+			}
+		}
+
+		return layout;
+	}
+
+	/**
+	 * Search a free position for a circle over a lattice covering the card, the lattice step being half the radius
+	 * @param grid : Circles already placed
+	 * @param shape : Shape of the card
+	 * @param radius : Radius of the circle to place
+	 * @return the center {x, y} of the circle, or null if there is no room left
+	 */
+	private static double[] searchPosition(SpatialGrid grid, CardShape shape, double radius)
+	{
+		double min = MARGIN + radius;
+		double max = 1 - MARGIN - radius;
+		if (max < min)
+		{
+			// Too large to stay inside the margins, only the center is possible
+			min = 0.5;
+			max = 0.5;
+		}
+
+		double step = radius / 2;
+		for (double cy = min; cy <= max; cy += step)
+		{
+			for (double cx = min; cx <= max; cx += step)
+			{
+				if (shape == CardShape.CIRCLE && Math.hypot(cx - 0.5, cy - 0.5) > Math.max(0, 0.5 - MARGIN - radius)) continue;
+				if (!grid.collides(cx, cy, radius + GAP)) return new double[] {cx, cy};
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Uniform grid over the card, each cell listing the circles overlapping it
+	 */
+	private static class SpatialGrid
+	{
+		private int cells;
+		private double cellSize;
+		private int[][] content;
+		private int[] counts;
+		private double[] cx;
+		private double[] cy;
+		private double[] radius;
+		private int size;
+
+		SpatialGrid(double cellSize, int capacity)
+		{
+			this.cells = Math.max(1, (int) Math.ceil(1 / cellSize));
+			this.cellSize = 1.0 / cells;
+			content = new int[cells * cells][capacity];
+			counts = new int[cells * cells];
+			cx = new double[capacity];
+			cy = new double[capacity];
+			radius = new double[capacity];
+		}
+
+		/**
+		 * Check if a circle overlaps one of the circles of the grid
+		 * @param x : x coordinate of the center
+		 * @param y : y coordinate of the center
+		 * @param r : Radius
+		 * @return true if there is an overlap
+		 */
+		boolean collides(double x, double y, double r)
+		{
+			int x0 = cell(x - r);
+			int x1 = cell(x + r);
+			int y0 = cell(y - r);
+			int y1 = cell(y + r);
+			for (int j = y0; j <= y1; j++)
+			{
+				for (int i = x0; i <= x1; i++)
+				{
+					int c = j * cells + i;
+					for (int k = 0; k < counts[c]; k++)
+					{
+						int other = content[c][k];
+						double dx = x - cx[other];
+						double dy = y - cy[other];
+						double distance = r + radius[other];
+						if (dx * dx + dy * dy < distance * distance) return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Add a circle in every cell its bounding box overlaps
+		 * @param x : x coordinate of the center
+		 * @param y : y coordinate of the center
+		 * @param r : Radius
+		 */
+		void insert(double x, double y, double r)
+		{
+			cx[size] = x;
+			cy[size] = y;
+			radius[size] = r;
+			for (int j = cell(y - r); j <= cell(y + r); j++)
+			{
+				for (int i = cell(x - r); i <= cell(x + r); i++)
+				{
+					int c = j * cells + i;
+					content[c][counts[c]++] = size;
+				}
+			}
+			size++;
+		}
+
+		/**
+		 * Index of the cell containing a coordinate, clamped to the grid
+		 * @param value : Coordinate
+		 * @return the index of the cell
+		 */
+		private int cell(double value)
+		{
+			return Math.min(cells - 1, Math.max(0, (int)(value / cellSize)));
+		}
+	}
+}
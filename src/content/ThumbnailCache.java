@@ -0,0 +1,499 @@
+package content;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Persistent cache of the images of the symbols in the grid, saved in a hidden directory of the folder of the symbols.
+ * An entry is identified by the path of its file in the folder, the length and the last modification of the file,
+ * so that a modified file is decoded again and the entries of the removed files are dropped at the next save.
+ * Only the index is read when the folder is opened, the pixels of an entry are read when its symbol is restored
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ThumbnailCache
+{
+	private volatile File dir;
+	private File cacheFile;
+	private FileChannel channel;
+	private HashMap<String, Entry> entries;
+	private boolean modified;
+
+	private final String DIRECTORY = ".dobble";
+	private final String EXTENSION = "DGTF";  // Dobble Generator Thumbnails File
+	private static final int MAGIC = 0x44475446;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+
+	private static ThumbnailCache instance;
+
+	private ThumbnailCache()
+	{
+		entries = new HashMap<>();
+	}
+
+	public static ThumbnailCache getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new ThumbnailCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Change the folder of the symbols, the cache of the previous folder is saved first
+	 * @param file : File representing the directory
+	 */
+	public synchronized void setDirectory(File file)
+	{
+		save();
+		close();
+		entries = new HashMap<>();
+		modified = false;
+		dir = file;
+		cacheFile = new File(new File(dir, DIRECTORY), "Thumbnails." + EXTENSION.toLowerCase());
+
+		if (cacheFile.isFile())
+		{
+			try
+			{
+				channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+				readIndex();
+			} catch (IOException e)
+			{
+				// An unreadable cache is only lost time, it is written again at the next save
+				System.out.println("Error while reading the thumbnails of " + dir.getName());
+				close();
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * Set the images of a symbol from its entry, if its file did not change since the entry was stored
+	 * @param symbol : Symbol to restore
+	 * @return true if the symbol is loaded from the cache
+	 */
+	public boolean restore(Symbol symbol)
+	{
+		File file = symbol.getFile();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		Entry entry;
+		byte[] data;
+		synchronized (this)
+		{
+			String key = getKey(file);
+			entry = key != null ? entries.get(key) : null;
+			if (entry == null || entry.width != symbol.getGridSize()) return false;
+			if (entry.length != length || entry.lastModified != lastModified)
+			{
+				// The file changed since the entry was stored
+				entries.remove(key);
+				modified = true;
+				return false;
+			}
+
+			try
+			{
+				data = read(entry);
+			} catch (IOException e)
+			{
+				return false;
+			}
+		}
+
+		try
+		{
+			symbol.restoreImage(decode(data, entry.width, entry.height), entry.sourceWidth, entry.sourceHeight);
+			return true;
+		} catch (DataFormatException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Add the images of a symbol just decoded from its file
+	 * @param symbol : Loaded symbol
+	 */
+	public void store(Symbol symbol)
+	{
+		File folder = dir;
+		File file = symbol.getFile();
+		BufferedImage image = symbol.getGridImage();
+		String key = getKey(file);
+		if (key == null || image == null) return;
+
+		Entry entry = new Entry(file.length(), file.lastModified(), symbol.getSourceWidth(), symbol.getSourceHeight(), image.getWidth(), image.getHeight());
+		entry.data = encode(image);
+		entry.dataLength = entry.data.length;
+		synchronized (this)
+		{
+			// A symbol of the previous folder loaded after the change is not kept
+			if (folder != dir) return;
+			entries.put(key, entry);
+			modified = true;
+		}
+	}
+
+	/**
+	 * Write the cache of the folder if it changed since it was read
+	 */
+	public synchronized void save()
+	{
+		if (dir == null || !modified) return;
+
+		// Drop the entries of the files removed from the folder
+		entries.keySet().removeIf(key -> !new File(dir, key).isFile());
+
+		File directory = cacheFile.getParentFile();
+		File temp = new File(directory, cacheFile.getName() + ".tmp");
+		try
+		{
+			if (!directory.isDirectory())
+			{
+				Files.createDirectories(directory.toPath());
+				hide(directory.toPath());
+			}
+
+			// Write the whole cache aside, the current file is read for the entries not in memory
+			ArrayList<Map.Entry<String, Entry>> written = new ArrayList<>(entries.entrySet());
+			long[] offsets = new long[written.size()];
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				write(out, written, offsets);
+			}
+			close();
+			Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			// The entries are now read from the new file
+			for (int i = 0; i < written.size(); i++)
+			{
+				Entry entry = written.get(i).getValue();
+				entry.offset = offsets[i];
+				entry.data = null;
+			}
+			modified = false;
+		} catch (IOException e)
+		{
+			System.out.println("Error while saving the thumbnails of " + dir.getName());
+			temp.delete();
+		} finally
+		{
+			reopen();
+		}
+	}
+
+	/**
+	 * Read the index of the cache file, the pixels are left in the file
+	 * @throws IOException if the file is not a cache of the current version
+	 */
+	private void readIndex() throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		readFully(header, 0);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) throw new IOException("Unknown thumbnails file");
+		int count = header.getInt(8);
+		int indexBytes = header.getInt(12);
+
+		ByteBuffer index = ByteBuffer.allocate(indexBytes);
+		readFully(index, HEADER_BYTES);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+		long offset = HEADER_BYTES + indexBytes;
+		for (int i = 0; i < count; i++)
+		{
+			String key = in.readUTF();
+			Entry entry = new Entry(in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			entry.dataLength = in.readInt();
+			entry.offset = offset;
+			offset += entry.dataLength;
+			entries.put(key, entry);
+		}
+		if (offset != channel.size()) throw new IOException("Truncated thumbnails file");
+	}
+
+	/**
+	 * Write the header, the index and the pixels of the entries
+	 * @param out : Destination of the cache
+	 * @param written : Entries to write
+	 * @param offsets : Position of the pixels of each entry in the written file
+	 * @throws IOException if the file cannot be written
+	 */
+	private void write(DataOutputStream out, ArrayList<Map.Entry<String, Entry>> written, long[] offsets) throws IOException
+	{
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(indexBytes);
+		for (Map.Entry<String, Entry> keyEntry : written)
+		{
+			Entry entry = keyEntry.getValue();
+			index.writeUTF(keyEntry.getKey());
+			index.writeLong(entry.length);
+			index.writeLong(entry.lastModified);
+			index.writeInt(entry.sourceWidth);
+			index.writeInt(entry.sourceHeight);
+			index.writeInt(entry.width);
+			index.writeInt(entry.height);
+			index.writeInt(entry.dataLength);
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(written.size());
+		out.writeInt(indexBytes.size());
+		indexBytes.writeTo(out);
+		long offset = HEADER_BYTES + indexBytes.size();
+		for (int i = 0; i < written.size(); i++)
+		{
+			byte[] data = read(written.get(i).getValue());
+			out.write(data);
+			offsets[i] = offset;
+			offset += data.length;
+		}
+	}
+
+	/**
+	 * Get the compressed pixels of an entry, from memory or from the cache file
+	 * @param entry : Entry to read
+	 * @return the compressed pixels
+	 * @throws IOException if the cache file cannot be read
+	 */
+	private byte[] read(Entry entry) throws IOException
+	{
+		if (entry.data != null) return entry.data;
+		if (channel == null) throw new IOException("Thumbnails file closed");
+		ByteBuffer buffer = ByteBuffer.allocate(entry.dataLength);
+		readFully(buffer, entry.offset);
+		return buffer.array();
+	}
+
+	/**
+	 * Fill a buffer from a position of the cache file
+	 * @param buffer : Buffer to fill
+	 * @param position : Position in the file
+	 * @throws IOException if the file ends before the buffer is full
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) throw new IOException("Truncated thumbnails file");
+		}
+	}
+
+	/**
+	 * Compress the pixels of an image, each channel stored as its difference with the pixel on the left
+	 * @param image : Image of the grid
+	 * @return the compressed pixels, starting with the number of channels
+	 */
+	private static byte[] encode(BufferedImage image)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+		// The alpha channel is left out of opaque images
+		int channels = 3;
+		for (int pixel : pixels)
+		{
+			if ((pixel >>> 24) != 0xff)
+			{
+				channels = 4;
+				break;
+			}
+		}
+
+		byte[] raw = new byte[1 + pixels.length * channels];
+		raw[0] = (byte) channels;
+		int position = 1;
+		for (int y = 0; y < height; y++)
+		{
+			int left = 0;
+			for (int x = 0; x < width; x++)
+			{
+				int pixel = pixels[y * width + x];
+				for (int c = channels - 1; c >= 0; c--)
+				{
+					raw[position++] = (byte)((pixel >>> (8 * c)) - (left >>> (8 * c)));
+				}
+				left = pixel;
+			}
+		}
+
+		Deflater deflater = new Deflater();
+		try
+		{
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished())
+			{
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		} finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Decompress the pixels of an image written by encode
+	 * @param data : Compressed pixels
+	 * @param width : Width of the image
+	 * @param height : Height of the image
+	 * @return the image of the grid
+	 * @throws DataFormatException if the pixels are corrupt
+	 */
+	private static BufferedImage decode(byte[] data, int width, int height) throws DataFormatException
+	{
+		byte[] raw = new byte[1 + width * height * 4];
+		int length = 0;
+		Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(data);
+			while (!inflater.finished() && length < raw.length)
+			{
+				int inflated = inflater.inflate(raw, length, raw.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				length += inflated;
+			}
+		} finally
+		{
+			inflater.end();
+		}
+		int channels = raw[0];
+		if ((channels != 3 && channels != 4) || length != 1 + width * height * channels) throw new DataFormatException("Corrupt thumbnail");
+
+		int[] pixels = new int[width * height];
+		int position = 1;
+		for (int y = 0; y < height; y++)
+		{
+			int left = 0;
+			for (int x = 0; x < width; x++)
+			{
+				int pixel = channels == 3 ? 0xff000000 : 0;
+				for (int c = channels - 1; c >= 0; c--)
+				{
+					pixel |= ((raw[position++] + (left >>> (8 * c))) & 0xff) << (8 * c);
+				}
+				pixels[y * width + x] = pixel;
+				left = pixel;
+			}
+		}
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	/**
+	 * Get the key of a file, its path relative to the folder
+	 * @param file : File of a symbol
+	 * @return the key, or null if the file is not in the folder
+	 */
+	private String getKey(File file)
+	{
+		File folder = dir;
+		if (folder == null || file == null) return null;
+		Path path = file.toPath().toAbsolutePath().normalize();
+		Path root = folder.toPath().toAbsolutePath().normalize();
+		if (!path.startsWith(root)) return null;
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Hide the directory of the cache on the systems without hidden dot files
+	 * @param directory : Directory of the cache
+	 */
+	private static void hide(Path directory)
+	{
+		try
+		{
+			Files.setAttribute(directory, "dos:hidden", true);
+		} catch (UnsupportedOperationException | IOException e)
+		{
+			// Already hidden by its name
+		}
+	}
+
+	/**
+	 * Open the cache file again after a save
+	 */
+	private void reopen()
+	{
+		if (channel != null || !cacheFile.isFile()) return;
+		try
+		{
+			channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+		} catch (IOException e)
+		{
+			System.out.println("Error while reading the thumbnails of " + dir.getName());
+		}
+	}
+
+	/**
+	 * Close the cache file
+	 */
+	private void close()
+	{
+		if (channel == null) return;
+		try
+		{
+			channel.close();
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		channel = null;
+	}
+
+	/**
+	 * Image of a symbol in the cache, its pixels are kept in memory until they are saved
+	 */
+	private static class Entry
+	{
+		private long length;
+		private long lastModified;
+		private int sourceWidth;
+		private int sourceHeight;
+		private int width;
+		private int height;
+		private long offset;
+		private int dataLength;
+		private byte[] data;
+
+		Entry(long length, long lastModified, int sourceWidth, int sourceHeight, int width, int height)
+		{
+			this.length = length;
+			this.lastModified = lastModified;
+			this.sourceWidth = sourceWidth;
+			this.sourceHeight = sourceHeight;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
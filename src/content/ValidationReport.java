@@ -0,0 +1,97 @@
+package content;
+
+import java.util.ArrayList;
+
+/**
+ * Result of the verification of a deck by the DeckValidator
+ * @author Etienne Hsler
+ * @version 2.0
+ */
+public class ValidationReport
+{
+	private final int firstCard;
+	private final int secondCard;
+	private final int commonSymbols;
+	private final ArrayList<Integer> repeatedCards;
+	private final int nbCards;
+	private final long duration;
+
+	ValidationReport(int firstCard, int secondCard, int commonSymbols, ArrayList<Integer> repeatedCards, int nbCards, long duration)
+	{
+		this.firstCard = firstCard;
+		this.secondCard = secondCard;
+		this.commonSymbols = commonSymbols;
+		this.repeatedCards = repeatedCards;
+		this.nbCards = nbCards;
+		this.duration = duration;
+	}
+
+	/**
+	 * Check the result of the verification
+	 * @return true if every pair of cards shares exactly one symbol and no card repeats a symbol
+	 */
+	public boolean isValid()
+	{
+		return firstCard < 0 && repeatedCards.isEmpty();
+	}
+
+	/**
+	 * @return the indices of the cards holding the same symbol more than once
+	 */
+	public ArrayList<Integer> getRepeatedCards()
+	{
+		return new ArrayList<>(repeatedCards);
+	}
+
+	/**
+	 * @return the index of the first card of the first offending pair, -1 if the deck is valid
+	 */
+	public int getFirstCard()
+	{
+		return firstCard;
+	}
+
+	/**
+	 * @return the index of the second card of the first offending pair, -1 if the deck is valid
+	 */
+	public int getSecondCard()
+	{
+		return secondCard;
+	}
+
+	/**
+	 * @return the number of symbols shared by the offending pair
+	 */
+	public int getCommonSymbols()
+	{
+		return commonSymbols;
+	}
+
+	public int getNbCards()
+	{
+		return nbCards;
+	}
+
+	/**
+	 * @return the duration of the verification in nanoseconds
+	 */
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	@Override
+	public String toString()
+	{
+		String time = String.format("%.3f ms", duration / 1e6);
+		if (isValid())
+		{
+			return nbCards + " cards verified in " + time;
+		}
+		if (!repeatedCards.isEmpty())
+		{
+			return "Cards " + repeatedCards + " repeat a symbol (" + nbCards + " cards, " + time + ")";
+		}
+		return "Cards " + firstCard + " and " + secondCard + " share " + commonSymbols + " symbols (" + nbCards + " cards, " + time + ")";
+	}
+}
@@ -3,9 +3,11 @@ package elements;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.util.ArrayList;
 
 /**
- * Message box animated to show messages to the user
+ * Message box animated to show messages to the user.
+ * A message with details stays open while its details are shown, a click on the box showing or hiding them
  * @author Etienne Hsler
  * @version 2.0
  */
@@ -14,18 +16,24 @@ public class MessageHandler extends Widget
 	private String message;
 	private boolean error;
 	private long startTime;
+	private ArrayList<String> details;
+	private boolean expanded;
 	
 	private final int TRANSITION_DURATION = 300;
 	private final int DISPLAY_DURATION = 3000;
 	private final int WIDTH = 600;
 	private final int HEIGHT = 60;
 	private final int CURVE = 20;
+	private final int LINE_HEIGHT = 22;
+	private final int MAX_DETAILS = 15;
 	
 	public MessageHandler()
 	{
 		startTime = 0;
 		message = "";
 		error = false;
+		details = new ArrayList<>();
+		expanded = false;
 		
 		w = WIDTH;
 		h = HEIGHT;
@@ -37,12 +45,57 @@ public class MessageHandler extends Widget
 	 * @param isError : Is the message an error or a warning
 	 */
 	public void addMessage(String newMessage, boolean isError)
+	{
+		addMessage(newMessage, isError, new ArrayList<>());
+	}
+	
+	/**
+	 * Add a message to display with details shown on a click
+	 * @param newMessage : Message to be displayed
+	 * @param isError : Is the message an error or a warning
+	 * @param newDetails : Lines of details of the message
+	 */
+	public void addMessage(String newMessage, boolean isError, ArrayList<String> newDetails)
 	{
 		message = newMessage;
 		error = isError;
+		details = newDetails;
+		expanded = false;
 		startTime = System.currentTimeMillis();
 	}
 	
+	/**
+	 * Show or hide the details of the displayed message when it is clicked
+	 * @param mouseX : Mouse x coordinate
+	 * @param mouseY : Mouse y coordinate
+	 * @param leftClicked : Left click state
+	 * @return true if the click was on the message, so that it does not reach the widgets under it
+	 */
+	public boolean handleClick(int mouseX, int mouseY, boolean leftClicked)
+	{
+		int t = (int)(System.currentTimeMillis() - startTime);
+		boolean displayed = expanded || (t >= TRANSITION_DURATION && t < TRANSITION_DURATION + DISPLAY_DURATION);
+		if (details.isEmpty() || !displayed || !leftClicked) return false;
+		
+		int height = expanded ? h + getDetailsHeight() : h;
+		if (mouseX > x && mouseX < x + w && mouseY > 0 && mouseY < height)
+		{
+			// Once hidden, the message leaves the Frame as after its display duration
+			expanded = !expanded;
+			if (!expanded) startTime = System.currentTimeMillis() - TRANSITION_DURATION - DISPLAY_DURATION;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the height of the details shown under the message
+	 */
+	private int getDetailsHeight()
+	{
+		return (Math.min(details.size(), MAX_DETAILS) + (details.size() > MAX_DETAILS ? 1 : 0)) * LINE_HEIGHT + 10;
+	}
+	
 	/**
 	 * Update the position of the MessageHandler based on it's parent dimension
 	 * @param frameWidth : Width of the Frame
@@ -60,7 +113,8 @@ public class MessageHandler extends Widget
 	 */
 	public void draw(Graphics g)
 	{
-		// Animation in three steps
+		// Animation in three steps, the message staying fixed while its details are shown
+		if (expanded) startTime = System.currentTimeMillis() - TRANSITION_DURATION;
 		int t = (int)(System.currentTimeMillis() - startTime);
 		int realY = y;
 		if (t < TRANSITION_DURATION)
@@ -79,20 +133,43 @@ public class MessageHandler extends Widget
 			realY = y + (int)(ratio * h);
 		}
 		
-		// Background
+		// Background, extended under the message by its details
+		int height = expanded ? h + getDetailsHeight() : h;
 		g.setColor(Color.WHITE);
-		g.fillRoundRect(x, realY, w, h, CURVE, CURVE);
+		g.fillRoundRect(x, realY, w, height, CURVE, CURVE);
 		g.setColor(Color.BLACK);
-		g.drawRoundRect(x, realY, w, h, CURVE, CURVE);
+		g.drawRoundRect(x, realY, w, height, CURVE, CURVE);
 		
 		// Message color
 		if (error) g.setColor(new Color(230, 0, 0));
 		else g.setColor(new Color(0, 0, 150));
 		
-		// Draw message
+		// Draw message, raised above the hint of its details
 		g.setFont(new Font("Arial", Font.BOLD, 20));
 		int widthText = g.getFontMetrics().stringWidth(message);
 		int xText = x + (w - widthText) / 2;
-		g.drawString(message, xText, realY + h - 13);
+		g.drawString(message, xText, realY + h - (details.isEmpty() || expanded ? 13 : 20));
+		
+		// Details
+		if (!details.isEmpty())
+		{
+			g.setFont(new Font("Arial", Font.PLAIN, 14));
+			g.setColor(Color.BLACK);
+			if (expanded)
+			{
+				for (int i = 0; i < Math.min(details.size(), MAX_DETAILS); i++)
+				{
+					g.drawString(details.get(i), x + CURVE, realY + h + (i + 1) * LINE_HEIGHT);
+				}
+				if (details.size() > MAX_DETAILS)
+				{
+					g.drawString("... et " + (details.size() - MAX_DETAILS) + " autres", x + CURVE, realY + h + (MAX_DETAILS + 1) * LINE_HEIGHT);
+				}
+			} else
+			{
+				String hint = "Cliquer pour le dtail";
+				g.drawString(hint, x + w - CURVE - g.getFontMetrics().stringWidth(hint), realY + h - 4);
+			}
+		}
 	}
 }
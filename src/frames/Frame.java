@@ -13,6 +13,7 @@ import javax.swing.JFrame;
 
 import content.AssociationsHandler;
 import content.TagLibrary;
+import content.ThumbnailCache;
 import elements.Main;
 import elements.Mouse;
 import panels.Panel;
@@ -80,6 +81,7 @@ public class Frame extends JFrame
 		    {
 				AssociationsHandler.getInstance().save(panel.getSymbols());
 				TagLibrary.getInstance().save();
+				ThumbnailCache.getInstance().save();
 		    }
 		});
 
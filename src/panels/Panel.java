@@ -14,14 +14,21 @@ import java.awt.event.KeyListener;
 import java.awt.geom.AffineTransform;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
 
 import javax.swing.ImageIcon;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import content.AssociationsHandler;
 import content.Card;
+import content.Deck;
+import content.DeckCache;
 import content.FileChooser;
 import content.ImageLoader;
+import content.ImageStore;
+import content.LoadReport;
 import content.PDFCreator;
 import content.SetSaver;
 import content.Settings;
@@ -30,6 +37,8 @@ import content.SymbolsLoader;
 import content.SymbolsRefactor;
 import content.Tag;
 import content.TagLibrary;
+import content.ThumbnailCache;
+import content.ValidationReport;
 import elements.Button;
 import elements.LoadingBar;
 import elements.Main;
@@ -41,7 +50,6 @@ import elements.TagFilter;
 import elements.Textfield;
 import elements.Widget;
 import elements.Window;
-import enums.CardShape;
 import frames.Frame;
 import frames.FrameAbout;
 import frames.FrameOptions;
@@ -80,6 +88,8 @@ public class Panel extends JPanel implements KeyListener
 	private ArrayList<Card> cards;
 	private ArrayList<Symbol> symbols;
 	private ArrayList<Symbol> filteredSymbols;
+	private ArrayList<Symbol> rankedSymbols;
+	private LoadReport reportedLoad;
 	private ArrayList<Symbol> selectedSymbols;
 	private ArrayList<Widget> widgets;
 
@@ -111,10 +121,15 @@ public class Panel extends JPanel implements KeyListener
 	private int mouseX;
 	private int mouseY;
 	private int symbolIndex;
+	private int rankedIndex;
+	private int rankedColumns;
 	private int xPreview;
 	private int yPreview;
 	private int nbSymbolsDisplayed;
-	private int nbCards;
+	private int nbSymbols;
+	private int deckCards;
+	private Deck deck;
+	private boolean buildingDeck;
 	private boolean savedSelection;
 	private boolean controlKey;
 	private boolean firstTimeControlKey;
@@ -144,7 +159,8 @@ public class Panel extends JPanel implements KeyListener
 		xPreview = 0;
 		yPreview = 0;
 		nbSymbolsDisplayed = 0;
-		nbCards = 0;
+		nbSymbols = 0;
+		deckCards = 0;
 		xRectSelection = 0;
 		yRectSelection = 0;
 		emptySymbolsMessageSize = 0;
@@ -160,6 +176,7 @@ public class Panel extends JPanel implements KeyListener
 		emptySymbols = false;
 		isLoading = false;
 		hasFocus = true;
+		buildingDeck = false;
 		
 		// Symbols and Persistence 
 		loader = new SymbolsLoader(System.getProperty("user.home") + System.getProperty("file.separator") + "Desktop", this, SIZE_SYMBOLS);
@@ -169,6 +186,7 @@ public class Panel extends JPanel implements KeyListener
 		AssociationsHandler.getInstance().read(symbols);
 		TagLibrary.getInstance().setDirectory(loader.getDirectory());
 		TagLibrary.getInstance().read();
+		ThumbnailCache.getInstance().setDirectory(loader.getDirectory());
 		if (symbols.size() == 0) emptySymbols = true;
 		else emptySymbols = false;
 		filteredSymbols = new ArrayList<>();
@@ -186,7 +204,7 @@ public class Panel extends JPanel implements KeyListener
 		widgets.add(previewWindow);
 		messageHandler = new MessageHandler();
 		widgets.add(messageHandler);
-		selectorSymbols = new Selector("Symboles par carte", 40, 77, new String[]{"2", "3", "4", "6", "8"}, fabWindow);
+		selectorSymbols = new Selector("Symboles par carte", 40, 77, new String[]{"2", "3", "4", "5", "6", "7", "8", "9", "10", "12", "14", "17", "18", "20", "24", "26", "28", "30", "32"}, fabWindow);
 		widgets.add(selectorSymbols);
 		
 		scrollbar = new Scrollbar();
@@ -244,7 +262,7 @@ public class Panel extends JPanel implements KeyListener
 	 */
 	public boolean addSelectedSymbol(Symbol symbol)
 	{
-		if (selectedSymbols.size() < nbCards)
+		if (selectedSymbols.size() < nbSymbols)
 		{
 			selectedSymbols.add(symbol);
 			return true;
@@ -313,19 +331,62 @@ public class Panel extends JPanel implements KeyListener
 	}
 	
 	/**
-	 * Compute the number of cards needed based on the symbols per card
+	 * Reset the number of cards to the full deck of the symbols per card selected, the deck being built by the next paint
 	 */
 	public void computeNumberOfCards()
 	{
 		// Number of cards
 		int nbSymByCard = Integer.parseInt(selectorSymbols.getValue());
-		nbCards = (int) Math.pow(nbSymByCard , 2) - nbSymByCard  + 1;
+		Settings.symbolsPerCard = nbSymByCard;
+		Settings.nbCards = (int) Math.pow(nbSymByCard , 2) - nbSymByCard  + 1;
+	}
+	
+	/**
+	 * Build the deck of the current settings in a thread, since a search takes seconds when no projective plane fits
+	 */
+	private void buildDeck()
+	{
+		int symbolsPerCard = Settings.symbolsPerCard;
+		int nbCards = Settings.nbCards;
+		buildingDeck = true;
+		deck = null;
+		setFocus(false);
+		new Thread(new Runnable() 
+		{
+			@Override
+			public void run() 
+			{
+				Deck built = DeckCache.getInstance().buildDeck(symbolsPerCard, nbCards);
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						setDeck(built, nbCards);
+					}
+				});
+			}
+		}).start();
+	}
+	
+	/**
+	 * Use a built deck, the number of symbols to select being the number of symbols of the deck
+	 * @param deck : Deck built
+	 * @param nbCards : Number of cards wanted when the deck was built
+	 */
+	private void setDeck(Deck deck, int nbCards)
+	{
+		this.deck = deck;
+		deckCards = nbCards;
+		buildingDeck = false;
+		setFocus(true);
+		nbSymbols = deck.getNbSymbols();
 		
-		// If the new number of selected symbol exceed the number of cards to select, automatically remove the last symbols selected to fit
-		if (selectedSymbols.size() > nbCards)
+		// If the new number of selected symbol exceed the number of symbols to select, automatically remove the last symbols selected to fit
+		if (selectedSymbols.size() > nbSymbols)
 		{
 			// Compute the difference
-			int diff = Math.abs(selectedSymbols.size() - nbCards);
+			int diff = Math.abs(selectedSymbols.size() - nbSymbols);
 			
 			// Remove the last symbols in the list
 			for (int i = 0; i < diff; i++)
@@ -340,95 +401,37 @@ public class Panel extends JPanel implements KeyListener
 	}
 	
 	/**
-	 * Algorithm to generate cards based on the current settings of the program.
-	 * Based on the Python version available on the Dobble wiki page
+	 * Generate cards based on the current settings of the program
+	 * @return true if the generated deck has been verified
 	 */
-	private void generateCards()
+	private boolean generateCards()
 	{
 		if (selectedSymbols.size() == 0) symbolIndex = 0;
 		else symbolIndex = 1;
 		
-		// Settings
-		int nbSymByCard = Integer.parseInt(selectorSymbols.getValue());
-		nbCards = (int) Math.pow(nbSymByCard , 2) - nbSymByCard  + 1;
-		cards = new ArrayList<>();
-		int n = nbSymByCard - 1;
-		ArrayList<ArrayList<ArrayList<Integer>>> t = new ArrayList<>();
-		
-		// Step 1
-		t.add(new ArrayList<>());
-		for (int i = 0; i < n; i++)
+		// Indices built and verified once per number of symbols and of cards, before spending time on the rendering
+		ValidationReport report = DeckCache.getInstance().getReport(deck.getSymbolsPerCard(), deckCards);
+		if (!report.isValid())
 		{
-			t.get(0).add(new ArrayList<>());
-			for (int j = 0; j < n; j++)
+			if (!report.getRepeatedCards().isEmpty())
 			{
-				t.get(0).get(i).add((j + 1) + (i * n));
-			}	
-		}
-		
-		// Step 2
-		for (int ti = 0; ti < n - 1; ti++)
-		{
-			t.add(new ArrayList<>());
-			for (int i = 0; i < n; i++)
+				messageHandler.addMessage("Jeu invalide, symbole rpt sur les cartes " + report.getRepeatedCards(), true);
+			} else
 			{
-				t.get(ti + 1).add(new ArrayList<>());
-				for (int j = 0; j < n; j++)
-				{
-					t.get(0).get((((ti + 1) * j) % n));
-					t.get(ti + 1).get(i).add(t.get(0).get((((ti + 1) * j) % n)).get((i + j) % n));
-				}	
+				messageHandler.addMessage("Jeu invalide, cartes " + report.getFirstCard() + " et " + report.getSecondCard(), true);
 			}
+			return false;
 		}
 		
-		// Step 3
-		t.add(new ArrayList<>());
-		for (int i = 0; i < n; i++)
-		{
-			t.get(t.size() - 1).add(new ArrayList<>());
-			for (int j = 0; j < n; j++)
-			{
-				t.get(t.size() - 1).get(i).add(t.get(0).get(j).get(i));
-			}	
-		}
-		
-		// Step 4
-		for (int i = 0; i < n; i++)
-		{
-			t.get(0).get(i).add(nbCards - n);
-			t.get(n).get(i).add(nbCards - n + 1);
-			for (int ti = 0; ti < n - 1; ti++)
-			{
-				t.get(ti + 1).get(i).add(nbCards - n + 1 + ti + 1);
-			}	
-		}
-		
-		// Step 5
-		t.add(new ArrayList<>());
-		t.get(t.size() - 1).add(new ArrayList<>());
-		for (int i = 0; i < nbSymByCard; i++)
+		// Decks found by a search can have fewer cards than wanted
+		if (deck.getNbCards() < deckCards)
 		{
-			t.get(t.size() - 1).get(0).add(i + nbCards - n);
+			messageHandler.addMessage("Jeu partiel de " + deck.getNbCards() + " cartes", false);
 		}
 		
-		// Creation of the cards based on the generated indices
-		for (int i = 0; i < t.size(); i++)
-		{
-			for (int j = 0; j < t.get(i).size(); j++)
-			{
-				// Conversion of the List to an Array of selected symbols from indices
-				int size = t.get(i).get(j).size();
-				Symbol[] symbols = new Symbol[size];
-				
-				for (int m = 0; m < size; m++)
-				{
-					symbols[m] = selectedSymbols.get(t.get(i).get(j).get(m) - 1);
-				}
-				
-				// Create cards
-				cards.add(new Card(CardShape.SQUARE, symbols, (int)((Settings.cardSize * Settings.cmToInch) * Settings.DPI)));
-			}
-		}
+		// Creation of the cards by binding the selected symbols on the indices, with a new seed for their layout
+		cards = deck.createCards(selectedSymbols, Settings.cardShape, (int)((Settings.cardSize * Settings.cmToInch) * Settings.DPI), new SplittableRandom().nextLong());
+		return true;
 	}
 	
 	/**
@@ -517,27 +520,22 @@ public class Panel extends JPanel implements KeyListener
 			}
 		}
 		
-		// Check if the ImageLoader can load images preemptively
-		int indexFirstSymbolDisplayed = scrollbar.getIndex() * columns;
-		if (ImageLoader.getInstance().isReady())
+		// Rank the images to load again when the visible rows change
+		if (scrollbar.getIndex() != rankedIndex || columns != rankedColumns || filteredSymbols != rankedSymbols)
 		{
-			if (indexFirstSymbolDisplayed >= 0 && indexFirstSymbolDisplayed < symbols.size())
-			{
-				for (int i = indexFirstSymbolDisplayed; i < symbols.size(); i++)
-				{
-					Symbol symbolPreemptive = symbols.get(i);
-					if (!symbolPreemptive.isLoaded() && !symbolPreemptive.isImageLoading())
-					{
-						symbolPreemptive.setImageLoading(true);
-						ImageLoader.getInstance().loadSymbol(symbolPreemptive);
-						break;
-					}
-				}
-			}
+			rankedIndex = scrollbar.getIndex();
+			rankedColumns = columns;
+			rankedSymbols = filteredSymbols;
+			rankSymbolsLoading();
 		}
 		
-		// Delete terminated tasks in the Loader
-		ImageLoader.getInstance().manageFutures();
+		// Report once the images of the folder that could not be loaded, with the file and the reason of each failure
+		LoadReport report = ImageLoader.getInstance().getReport();
+		if (report != reportedLoad && report.isDone() && report.getNbFailures() > 0)
+		{
+			reportedLoad = report;
+			messageHandler.addMessage(report.getNbFailures() + " image(s) du dossier n'ont pas pu tre charges", true, report.getFailures());
+		}
 		
 		// Update the position of the empty symbol list message
 		posEmptySymbolsImage = new Dimension(fabWindow.getX() + fabWindow.getWidth() / 2 - emptySymbolsImage.getWidth(null) / 2, 
@@ -546,6 +544,31 @@ public class Panel extends JPanel implements KeyListener
 				fabWindow.getY() + fabWindow.getHeight() / 2 + 50);
 	}
 	
+	/**
+	 * Give the ImageLoader the priority of each symbol, its distance in rows to the visible rows.
+	 * The visible symbols are loaded first, then the rows around them, and the symbols hidden by the filter last
+	 */
+	private void rankSymbolsLoading()
+	{
+		HashMap<Symbol, Integer> priorities = new HashMap<>();
+		for (int i = 0; i < filteredSymbols.size(); i++)
+		{
+			int row = i / columns;
+			priorities.put(filteredSymbols.get(i), row < rankedIndex ? rankedIndex - row : Math.max(0, row - rankedIndex - rows + 1));
+		}
+		ImageLoader.getInstance().rank(symbol -> priorities.getOrDefault(symbol, Integer.MAX_VALUE));
+		
+		// Symbols of a new folder or not loaded yet
+		for (Symbol symbol : symbols)
+		{
+			if (!symbol.isLoaded() && !symbol.isImageLoading())
+			{
+				symbol.setImageLoading(true);
+				ImageLoader.getInstance().loadSymbol(symbol, priorities.getOrDefault(symbol, Integer.MAX_VALUE));
+			}
+		}
+	}
+	
 	/**
 	 * Called on a scroll event to adapt the symbols
 	 * @param rotation : Wheel rotation
@@ -656,7 +679,7 @@ public class Panel extends JPanel implements KeyListener
 						if (selectedSymbols.contains(symbol)) selectedSymbols.remove(symbol);
 					} else
 					{
-						if (selectedSymbols.size() < nbCards)
+						if (selectedSymbols.size() < nbSymbols)
 						{
 							// Select symbols if the control key is not pushed and that there is enough cards number left to add
 							symbol.select();
@@ -722,6 +745,9 @@ public class Panel extends JPanel implements KeyListener
 		AssociationsHandler.getInstance().setDirectory(loader.getDirectory());
 		AssociationsHandler.getInstance().read(symbols);
 		
+		// Save the thumbnails of the previous folder and read the ones of the new folder
+		ThumbnailCache.getInstance().setDirectory(loader.getDirectory());
+		
 		// Adapt the windows to the new content
 		adaptWindows(frameWidth, frameHeight);
 		if (symbols.size() == 0) emptySymbols = true;
@@ -732,8 +758,9 @@ public class Panel extends JPanel implements KeyListener
 		tagFilter.deleteAllTags();
 		tagFilter.getTextfield().setContent("");
 		
-		// Shutdown previous images operations to reset the ImageLoader
+		// Shutdown previous images operations to reset the ImageLoader, the full images of the previous symbols are not needed anymore
 		ImageLoader.getInstance().shutdown();
+		ImageStore.getInstance().clear();
 		
 		// Update visually the new symbols
 		updateSymbolDisplayed();
@@ -905,12 +932,24 @@ public class Panel extends JPanel implements KeyListener
 		g.setColor(new Color(240, 240, 240));
 		g.fillRect(0, 0, 2 * frameWidth, 2 * frameHeight);
 		
+		// Deck of the current settings, a deck with fewer cards than wanted is searched again when it is selected again
+		if (hasFocus && !buildingDeck && (deck == null || deck.getSymbolsPerCard() != Settings.symbolsPerCard || deckCards != Settings.nbCards))
+		{
+			buildDeck();
+		}
+		
+		// Details of the displayed message
+		if (hasFocus && messageHandler.handleClick(mouseX, mouseY, Mouse.leftClicked)) Mouse.leftClicked = false;
+		
 		// Deck operations
 		printerButton.draw(g);
 		if (hasFocus && !Mouse.leftPressed) printerButton.handleClick(mouseX, mouseY, Mouse.leftClicked);
 		if (printerButton.isClicked())
 		{
-			if (selectedSymbols.size() == nbCards)
+			if (deck == null)
+			{
+				messageHandler.addMessage("Recherche du jeu en cours", false);
+			} else if (selectedSymbols.size() == nbSymbols)
 			{
 				boolean imagesLoaded = true;
 				for (int i = 0; i < selectedSymbols.size(); i++)
@@ -923,18 +962,20 @@ public class Panel extends JPanel implements KeyListener
 				
 				if (imagesLoaded)
 				{
-				generateCards();
-				printerButton.setActivation(true);
-				isLoading = true;
-				hasFocus = false;
-				new Thread(new SetSaver(this)).start();
+					if (generateCards())
+					{
+						printerButton.setActivation(true);
+						isLoading = true;
+						hasFocus = false;
+						new Thread(new SetSaver(this)).start();
+					}
 				} else 
 				{
 					messageHandler.addMessage("Les symboles slctionns n'ont pas fini de charger", false);
 				}
 			} else
 			{
-				messageHandler.addMessage("Veuillez d'abord slectionner " + nbCards + " symboles", false);
+				messageHandler.addMessage("Veuillez d'abord slectionner " + nbSymbols + " symboles", false);
 			}
 		}
 		
@@ -1027,7 +1068,7 @@ public class Panel extends JPanel implements KeyListener
 				if (hasFocus && !Mouse.leftPressed) selectorSymbols.handleClick(this, mouseX, mouseY);
 				g.setFont(new Font("Arial", Font.PLAIN, 20));
 				g.setColor(Color.BLACK);
-				g.drawString("Symboles slectionns: " + selectedSymbols.size() + " / " + nbCards, xSymbols, ySymbols + heightSymbols + 32);
+				g.drawString("Symboles slectionns: " + selectedSymbols.size() + " / " + nbSymbols, xSymbols, ySymbols + heightSymbols + 32);
 				
 				String totalSymbols = "Symboles disponibles: " + filteredSymbols.size();
 				int totalSymbolsWidth = g.getFontMetrics().stringWidth(totalSymbols);
@@ -2,6 +2,7 @@ package panels;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.MouseInfo;
@@ -10,10 +11,14 @@ import java.awt.Stroke;
 
 import javax.swing.JPanel;
 
+import content.ImageEncoder;
 import content.Settings;
+import content.SheetLayout;
+import content.SizeEstimator;
 import elements.CheckBox;
 import elements.Mouse;
 import elements.Slider;
+import enums.CardShape;
 
 /**
  * Panel for the Print Settings Frame
@@ -43,6 +48,8 @@ public class PanelOptions extends JPanel
 	private int usableWidth;
 	private int usableHeight;
 	private double ratioCentimetersPixel;
+	private int maxCards;
+	private SheetLayout sheet;
 	
 	private final double RATIO_SHEET = Math.sqrt(2);
 	private final int MARGIN = 20;
@@ -50,13 +57,19 @@ public class PanelOptions extends JPanel
 	private final int MARKER_LENGTH = 8;
 	private final int LENGTH_SLIDER = 400;
 	private final int CHECKBOX_SIZE = 40;
+	private final Font ESTIMATE_FONT = new Font("Arial", Font.PLAIN, 16);
 	
 	private CheckBox bordersCB;
 	private CheckBox linesCB;
 	private CheckBox markersCB;
+	private CheckBox roundCB;
+	private CheckBox vectorCB;
 	private Slider sliderSize;
 	private Slider sliderMargin;
 	private Slider sliderDPI;
+	private Slider sliderQuality;
+	private Slider sliderCompression;
+	private Slider sliderCards;
 	
 	public PanelOptions(int frameWidth, int frameHeight)
 	{
@@ -90,11 +103,27 @@ public class PanelOptions extends JPanel
 		if (Settings.usingLines) linesCB.check();
 		markersCB = new CheckBox("Traits de coupe", CHECKBOX_SIZE);
 		if (Settings.usingMarkers) markersCB.check();
+		roundCB = new CheckBox("Cartes rondes", CHECKBOX_SIZE);
+		if (Settings.cardShape == CardShape.CIRCLE) roundCB.check();
+		vectorCB = new CheckBox("Composition vectorielle", CHECKBOX_SIZE);
+		if (Settings.vectorMode) vectorCB.check();
 		
 		// Sliders
 		sliderSize = new Slider("Taille des cartes", "cm", LENGTH_SLIDER, 4.0, 20.0, Settings.cardSize, 0.1);
 		sliderMargin = new Slider("Marges d'impression", "cm", LENGTH_SLIDER, 0.5, 2.0, Settings.sheetMargin, 0.1);
 		sliderDPI = new Slider("Qualit d'image", "DPI", LENGTH_SLIDER, 100.0, 1200.0, Settings.DPI, 10.0);
+		sliderQuality = new Slider("Qualit JPEG", "%", LENGTH_SLIDER, 10.0, 100.0, Settings.jpegQuality, 5.0);
+		sliderCompression = new Slider("Niveau de compression", "/ 9", LENGTH_SLIDER, 0.0, 9.0, Settings.compressionLevel, 1.0);
+		createSliderCards();
+	}
+	
+	/**
+	 * Create the slider of the number of cards, up to the full deck of the symbols per card selected in the main panel
+	 */
+	private void createSliderCards()
+	{
+		maxCards = Settings.symbolsPerCard * Settings.symbolsPerCard - Settings.symbolsPerCard + 1;
+		sliderCards = new Slider("Cartes du jeu", "cartes", LENGTH_SLIDER, 2.0, maxCards, Math.min(Settings.nbCards, maxCards), 1.0);
 	}
 	
 	public void setFocus(boolean focus) 
@@ -104,7 +133,22 @@ public class PanelOptions extends JPanel
 	
 	public boolean slidersSelected()
 	{
-		return sliderSize.isSelected() || sliderMargin.isSelected() || sliderDPI.isSelected();
+		return sliderSize.isSelected() || sliderMargin.isSelected() || sliderDPI.isSelected() || sliderQuality.isSelected() || sliderCompression.isSelected()
+				|| sliderCards.isSelected();
+	}
+	
+	/**
+	 * Check if a slider other than the given one is being moved
+	 * @param slider : Slider to ignore
+	 * @return true if another slider is selected
+	 */
+	private boolean otherSliderSelected(Slider slider)
+	{
+		for (Slider other : new Slider[]{sliderSize, sliderMargin, sliderDPI, sliderQuality, sliderCompression, sliderCards})
+		{
+			if (other != slider && other.isSelected()) return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -132,28 +176,34 @@ public class PanelOptions extends JPanel
 		// Compute the number of rows and columns in the preview
 		usableWidth = previewW - 2 * margin;
 		usableHeight = previewH - 2 * margin;
-		columns = (int) Math.floor(usableWidth / cardSize);
-		rows = (int) Math.floor(usableHeight / cardSize);
+		sheet = new SheetLayout(Settings.cardShape, usableWidth, usableHeight, cardSize);
+		columns = sheet.getColumns();
+		rows = sheet.getRows();
 		
 		// Position and dimension of the cards in the preview
-		wCards = columns * cardSize;
-		hCards = rows * cardSize;
+		wCards = (int) sheet.getWidth();
+		hCards = (int) sheet.getHeight();
 		xCards = previewX + margin + (usableWidth - wCards) / 2;
 		yCards = previewY + margin + (usableHeight - hCards) / 2;
 		
 		int leftWidth = frameWidth - previewW - MARGIN;
 		int xComboBoxes = (leftWidth - LENGTH_SLIDER) / 2;
-		int yParameters = (frameHeight - 560) / 2;
+		int yParameters = (frameHeight - 720) / 2;
 		
 		// Sliders
 		sliderSize.adapt(xComboBoxes, yParameters + 60);
 		sliderMargin.adapt(xComboBoxes, yParameters + 120);
 		sliderDPI.adapt(xComboBoxes, yParameters + 180);
+		sliderQuality.adapt(xComboBoxes, yParameters + 240);
+		sliderCompression.adapt(xComboBoxes, yParameters + 300);
+		sliderCards.adapt(xComboBoxes, yParameters + 360);
 		
 		// Check boxes
-		bordersCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 280);
-		linesCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 340);
-		markersCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 400);
+		bordersCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 440);
+		linesCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 495);
+		markersCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 550);
+		roundCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 605);
+		vectorCB.adapt(xComboBoxes + 2 * CHECKBOX_SIZE, yParameters + 660);
 	}
 	
 	/**
@@ -192,21 +242,45 @@ public class PanelOptions extends JPanel
 		linesCB.draw(g);
 		if (hasFocus && !slidersSelected()) markersCB.handleClick(mouseX, mouseY);
 		markersCB.draw(g);
+		if (hasFocus && !slidersSelected()) roundCB.handleClick(mouseX, mouseY);
+		roundCB.draw(g);
+		Settings.cardShape = roundCB.isChecked() ? CardShape.CIRCLE : CardShape.SQUARE;
+		if (hasFocus && !slidersSelected()) vectorCB.handleClick(mouseX, mouseY);
+		vectorCB.draw(g);
+		Settings.vectorMode = vectorCB.isChecked();
 		
 		// Sliders
-		if (hasFocus && !sliderDPI.isSelected() && !sliderMargin.isSelected()) sliderSize.handleClick(mouseX, mouseY);
+		if (hasFocus && !otherSliderSelected(sliderSize)) sliderSize.handleClick(mouseX, mouseY);
 		sliderSize.draw(g);
 		Settings.cardSize = sliderSize.getValue();
 		adaptWindow(frameWidth, frameHeight);
 		
-		if (hasFocus && !sliderDPI.isSelected() && !sliderSize.isSelected()) sliderMargin.handleClick(mouseX, mouseY);
+		if (hasFocus && !otherSliderSelected(sliderMargin)) sliderMargin.handleClick(mouseX, mouseY);
 		sliderMargin.draw(g);
 		Settings.sheetMargin = sliderMargin.getValue();
 		adaptWindow(frameWidth, frameHeight);
 		
-		if (hasFocus && !sliderSize.isSelected() && !sliderMargin.isSelected()) sliderDPI.handleClick(mouseX, mouseY);
+		if (hasFocus && !otherSliderSelected(sliderDPI)) sliderDPI.handleClick(mouseX, mouseY);
 		sliderDPI.draw(g);
 		Settings.DPI = (int) sliderDPI.getValue();
+		
+		if (hasFocus && !otherSliderSelected(sliderQuality)) sliderQuality.handleClick(mouseX, mouseY);
+		sliderQuality.draw(g);
+		Settings.jpegQuality = (int) sliderQuality.getValue();
+		
+		if (hasFocus && !otherSliderSelected(sliderCompression)) sliderCompression.handleClick(mouseX, mouseY);
+		sliderCompression.draw(g);
+		Settings.compressionLevel = (int) sliderCompression.getValue();
+		
+		// The symbols per card changed in the main panel, which reset the number of cards to the full deck
+		if (maxCards != Settings.symbolsPerCard * Settings.symbolsPerCard - Settings.symbolsPerCard + 1)
+		{
+			createSliderCards();
+			adaptWindow(frameWidth, frameHeight);
+		}
+		if (hasFocus && !otherSliderSelected(sliderCards)) sliderCards.handleClick(mouseX, mouseY);
+		sliderCards.draw(g);
+		Settings.nbCards = (int) Math.round(sliderCards.getValue());
  		
 		// Preview
 		g.setColor(Color.WHITE);
@@ -214,15 +288,26 @@ public class PanelOptions extends JPanel
 		g.setColor(Color.BLACK);
 		g.drawRect(previewX, previewY, previewW, previewH);
 		
+		// Estimated size of the document, JPEG being used below the maximum quality
+		String estimate = String.format("Taille estime du PDF : %,.1f Mo (%s)", SizeEstimator.estimate(Settings.symbolsPerCard, Settings.nbCards) / 1e6,
+				Settings.jpegQuality < ImageEncoder.LOSSLESS ? "JPEG" : "sans perte");
+		g.setFont(ESTIMATE_FONT);
+		g.drawString(estimate, previewX + (previewW - g.getFontMetrics().stringWidth(estimate)) / 2, previewY + previewH + 30);
+		
 		// Borders
 		if (bordersCB.isChecked())
 		{
 			Settings.usingBorders = true;
-			for (int i = 0; i < columns; i++)
+			for (int i = 0; i < sheet.getNbCards(); i++)
 			{
-				for (int j = 0; j < rows; j++)
+				int x = xCards + (int) sheet.getX(i);
+				int y = yCards + (int) sheet.getY(i);
+				if (Settings.cardShape == CardShape.CIRCLE)
 				{
-					g.drawRect(xCards + i * cardSize + 2, yCards + j * cardSize + 2, cardSize - 4, cardSize - 4);
+					g.drawOval(x + 2, y + 2, cardSize - 4, cardSize - 4);
+				} else
+				{
+					g.drawRect(x + 2, y + 2, cardSize - 4, cardSize - 4);
 				}
 			}
 		} else
@@ -241,11 +326,10 @@ public class PanelOptions extends JPanel
 			sliderSize.setMax(SHEET_WIDTH - 2 * sliderMargin.getValue());
 		}
 		
-		// Dashed lines
-		if (linesCB.isChecked())
+		// Dashed lines, only for the cards placed on a grid
+		Settings.usingLines = linesCB.isChecked();
+		if (linesCB.isChecked() && sheet.isGrid())
 		{
-			Settings.usingLines = true;
-			
 			g.setColor(Color.BLACK);
 			Stroke dashed = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0);
 	        g2.setStroke(dashed);
@@ -260,16 +344,12 @@ public class PanelOptions extends JPanel
 			}
 
 			g2.setStroke(new BasicStroke(2));
-		} else
-		{
-			Settings.usingLines = false;
 		}
 		
-		// Markers
-		if (markersCB.isChecked())
+		// Markers, only for the cards placed on a grid
+		Settings.usingMarkers = markersCB.isChecked();
+		if (markersCB.isChecked() && sheet.isGrid())
 		{
-			Settings.usingMarkers = true;
-			
 			g.setColor(Color.BLACK);
 			int shiftX = (usableWidth - wCards) / 2;
 			int shiftY = (usableHeight - hCards) / 2;
@@ -285,9 +365,6 @@ public class PanelOptions extends JPanel
 				g.drawLine(previewX + margin, previewY + margin + j * cardSize + shiftY, previewX + margin + MARKER_LENGTH, previewY + margin + j * cardSize + shiftY);
 				g.drawLine(previewX - margin + previewW - MARKER_LENGTH, previewY + margin + j * cardSize + shiftY, previewX - margin + previewW, previewY + margin + j * cardSize + shiftY);
 			}
-		} else 
-		{
-			Settings.usingMarkers = false;
 		}
 			
 		// Reset mouse click